@@ -0,0 +1,143 @@
+package com.vackosar.gitflowincrementalbuild.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the benchmarks with the GC profiler, writes a CSV result and compares it with the baseline. Accepts all JMH
+ * options plus -baseline &lt;file&gt; (default baseline.csv) and -threshold &lt;fraction&gt; (default 0.25). Exits with 1
+ * if time or normalized allocation of any benchmark present in the baseline grew by more than the threshold.
+ */
+public class Main {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws Exception {
+        final List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        final Path baseline = Paths.get(extract(jmhArgs, "-baseline", "baseline.csv"));
+        final double threshold = Double.parseDouble(extract(jmhArgs, "-threshold", "0.25"));
+        final CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+        if (! commandLine.getResult().hasValue()) {
+            options.result("target/jmh-result.csv");
+        }
+        if (! commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.CSV);
+        }
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include("IncrementalBuildBenchmark");
+        }
+        final String result = options.build().getResult().orElse("target/jmh-result.csv");
+        new Runner(options.build()).run();
+        if (! Files.exists(baseline)) {
+            System.out.println("No baseline " + baseline + " to compare with.");
+            return;
+        }
+        if (compare(read(baseline), read(Paths.get(result)), threshold) > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String extract(List<String> args, String option, String defaultValue) {
+        final int index = args.indexOf(option);
+        if (index < 0 || index + 1 >= args.size()) {
+            return defaultValue;
+        }
+        final String value = args.remove(index + 1);
+        args.remove(index);
+        return value;
+    }
+
+    private static int compare(Map<String, Double> baseline, Map<String, Double> current, double threshold) {
+        int regressions = 0;
+        int compared = 0;
+        for (Map.Entry<String, Double> entry: current.entrySet()) {
+            final Double base = baseline.get(entry.getKey());
+            if (base == null || base.isNaN() || entry.getValue().isNaN()) {
+                continue;
+            }
+            compared++;
+            final double change = base == 0 ? 0 : entry.getValue() / base - 1;
+            if (change > threshold) {
+                regressions++;
+                System.out.println(String.format("REGRESSION %s: %.3f -> %.3f (%+.0f%%)", entry.getKey(), base, entry.getValue(), change * 100));
+            }
+        }
+        System.out.println("Compared " + compared + " results with baseline, " + regressions + " regressed by more than "
+                + Math.round(threshold * 100) + "%.");
+        return regressions;
+    }
+
+    /**
+     * @return scores of primary and normalized allocation metrics keyed by benchmark name and parameters.
+     */
+    private static Map<String, Double> read(Path csv) throws IOException {
+        final List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        final Map<String, Double> scores = new TreeMap<>();
+        if (lines.isEmpty()) {
+            return scores;
+        }
+        final List<String> header = split(lines.get(0));
+        for (String line: lines.subList(1, lines.size())) {
+            final List<String> values = split(line);
+            final Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(header.size(), values.size()); i++) {
+                row.put(header.get(i), values.get(i));
+            }
+            final String benchmark = row.get("Benchmark");
+            if (benchmark == null || (benchmark.contains(":") && ! benchmark.endsWith(ALLOCATION))) {
+                continue;
+            }
+            final StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.indexOf(':') < 0 ? benchmark.length() : benchmark.indexOf(':')) + 1));
+            new TreeMap<>(row).forEach((name, value) -> {
+                if (name.startsWith("Param: ")) {
+                    key.append(' ').append(name.substring("Param: ".length())).append('=').append(value);
+                }
+            });
+            scores.put(key.toString(), parse(row.get("Score")));
+        }
+        return scores;
+    }
+
+    private static double parse(String score) {
+        try {
+            return Double.parseDouble(score);
+        } catch (NumberFormatException | NullPointerException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static List<String> split(String line) {
+        final List<String> values = new ArrayList<>();
+        final StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (char c: line.toCharArray()) {
+            if (c == '"') {
+                quoted = ! quoted;
+            } else if (c == ',' && ! quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
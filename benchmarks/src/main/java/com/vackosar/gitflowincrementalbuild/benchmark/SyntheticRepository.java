@@ -0,0 +1,230 @@
+package com.vackosar.gitflowincrementalbuild.benchmark;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Git repository of a generated reactor. Objects are written directly, so no files are checked out and only the
+ * module dirs exist on disk. Branch base, also HEAD, holds all files with shared content and branch reference changes
+ * given number of files spread evenly over all modules. Modules are arranged in dependency layers, each module
+ * depending on up to fan out modules of the layer below. Files are split evenly over modules, at least one per module.
+ * <p>
+ * Unchanged subtrees have equal ids in both branches and are skipped by the diff, so diff time follows the number of
+ * changed files rather than the total. The total is verified after generation, so that it really grows the trees.
+ */
+public final class SyntheticRepository implements AutoCloseable {
+
+    public static final String BASE = "refs/heads/base";
+    public static final String REFERENCE = "refs/heads/reference";
+    private static final String GROUP_ID = "com.example";
+    private static final String VERSION = "1";
+    private static final int FILES_PER_PACKAGE = 100;
+
+    public final Path dir;
+    public final List<MavenProject> projects = new ArrayList<>();
+    private final Git git;
+    private final ObjectInserter inserter;
+    private final ObjectId blob;
+    private final ObjectId pom;
+
+    private SyntheticRepository(Path dir) throws Exception {
+        this.dir = dir;
+        this.git = Git.init().setDirectory(dir.toFile()).call();
+        this.inserter = git.getRepository().newObjectInserter();
+        this.blob = inserter.insert(Constants.OBJ_BLOB, Constants.encode("class F {}\n"));
+        this.pom = inserter.insert(Constants.OBJ_BLOB, Constants.encode("<project/>\n"));
+    }
+
+    public static SyntheticRepository create(int modules, int files, int changedFiles, int depth, int fanOut) throws Exception {
+        final SyntheticRepository repository = new SyntheticRepository(Files.createTempDirectory("gib-benchmark"));
+        final int filesPerModule = Math.max(1, files / modules);
+        repository.generate(modules, filesPerModule, changedFiles);
+        final long expected = (long) modules * (filesPerModule + 1) + 1;
+        final long generated = repository.countFiles(BASE);
+        if (generated != expected) {
+            throw new IllegalStateException("Generated " + generated + " files instead of " + expected + ".");
+        }
+        repository.createProjects(modules, depth, fanOut);
+        return repository;
+    }
+
+    /**
+     * @return number of files, including poms, in the tree of given branch.
+     */
+    public long countFiles(String branch) throws IOException {
+        final Repository repository = git.getRepository();
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(walk.parseCommit(repository.resolve(branch)).getTree());
+            treeWalk.setRecursive(true);
+            long count = 0;
+            while (treeWalk.next()) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private void generate(int modules, int filesPerModule, int changedFiles) throws IOException {
+        final int total = modules * filesPerModule;
+        final int stride = Math.max(1, total / Math.max(1, changedFiles));
+        final Set<Integer> changed = new HashSet<>();
+        for (int i = 0; i < Math.min(changedFiles, total); i++) {
+            changed.add(i * stride);
+        }
+        final TreeFormatter baseModules = new TreeFormatter();
+        final TreeFormatter referenceModules = new TreeFormatter();
+        for (int module = 0; module < modules; module++) {
+            final int first = module * filesPerModule;
+            final ObjectId base = createModuleTree(first, filesPerModule, new HashSet<>());
+            final boolean modified = changed.stream().anyMatch(i -> i >= first && i < first + filesPerModule);
+            baseModules.append(moduleName(module), FileMode.TREE, base);
+            referenceModules.append(moduleName(module), FileMode.TREE, modified ? createModuleTree(first, filesPerModule, changed) : base);
+            Files.createDirectories(moduleDir(module));
+        }
+        final ObjectId baseCommit = commit(createRootTree(inserter.insert(baseModules)), null);
+        final ObjectId referenceCommit = commit(createRootTree(inserter.insert(referenceModules)), baseCommit);
+        inserter.flush();
+        final Repository repository = git.getRepository();
+        update(repository.updateRef(BASE), baseCommit);
+        update(repository.updateRef(REFERENCE), referenceCommit);
+        repository.updateRef(Constants.HEAD).link(BASE);
+    }
+
+    private ObjectId createModuleTree(int first, int files, Set<Integer> changed) throws IOException {
+        final TreeFormatter packages = new TreeFormatter();
+        for (int start = 0; start < files; start += FILES_PER_PACKAGE) {
+            final TreeFormatter sources = new TreeFormatter();
+            for (int file = start; file < Math.min(files, start + FILES_PER_PACKAGE); file++) {
+                final int index = first + file;
+                final ObjectId content = changed.contains(index)
+                        ? inserter.insert(Constants.OBJ_BLOB, Constants.encode("class F" + index + " {}\n"))
+                        : blob;
+                sources.append(String.format("F%03d.java", file - start), FileMode.REGULAR_FILE, content);
+            }
+            packages.append(String.format("p%04d", start / FILES_PER_PACKAGE), FileMode.TREE, inserter.insert(sources));
+        }
+        final ObjectId src = insertTree("main", insertTree("java", inserter.insert(packages)));
+        final TreeFormatter module = new TreeFormatter();
+        module.append("pom.xml", FileMode.REGULAR_FILE, pom);
+        module.append("src", FileMode.TREE, src);
+        return inserter.insert(module);
+    }
+
+    private ObjectId insertTree(String name, ObjectId tree) throws IOException {
+        final TreeFormatter formatter = new TreeFormatter();
+        formatter.append(name, FileMode.TREE, tree);
+        return inserter.insert(formatter);
+    }
+
+    private ObjectId createRootTree(ObjectId modules) throws IOException {
+        final TreeFormatter root = new TreeFormatter();
+        root.append("modules", FileMode.TREE, modules);
+        root.append("pom.xml", FileMode.REGULAR_FILE, pom);
+        return inserter.insert(root);
+    }
+
+    private ObjectId commit(ObjectId tree, ObjectId parent) throws IOException {
+        final PersonIdent ident = new PersonIdent("benchmark", "benchmark@example.com");
+        final CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage(parent == null ? "base" : "reference");
+        if (parent != null) {
+            commit.setParentId(parent);
+        }
+        return inserter.insert(commit);
+    }
+
+    private static void update(RefUpdate update, ObjectId id) throws IOException {
+        update.setNewObjectId(id);
+        update.forceUpdate();
+    }
+
+    private void createProjects(int modules, int depth, int fanOut) {
+        final MavenProject root = createProject("root", dir);
+        root.setExecutionRoot(true);
+        projects.add(root);
+        final List<List<MavenProject>> layers = new ArrayList<>();
+        for (int module = 0; module < modules; module++) {
+            final int layer = (int) ((long) module * depth / modules);
+            while (layers.size() <= layer) {
+                layers.add(new ArrayList<>());
+            }
+            final MavenProject project = createProject(moduleName(module), moduleDir(module));
+            project.setParent(root);
+            if (layer > 0) {
+                final List<MavenProject> below = layers.get(layer - 1);
+                final Set<MavenProject> upstream = new LinkedHashSet<>();
+                for (int i = 0; i < fanOut; i++) {
+                    upstream.add(below.get((module * 31 + i * 17) % below.size()));
+                }
+                upstream.forEach(u -> project.getModel().addDependency(dependency(u)));
+            }
+            layers.get(layer).add(project);
+            projects.add(project);
+        }
+    }
+
+    private Path moduleDir(int module) {
+        return dir.resolve("modules").resolve(moduleName(module));
+    }
+
+    private static String moduleName(int module) {
+        return String.format("m%05d", module);
+    }
+
+    private static MavenProject createProject(String artifactId, Path basedir) {
+        final Model model = new Model();
+        model.setProperties(new Properties());
+        final MavenProject project = new MavenProject(model);
+        project.setGroupId(GROUP_ID);
+        project.setArtifactId(artifactId);
+        project.setVersion(VERSION);
+        project.setFile(basedir.resolve("pom.xml").toFile());
+        return project;
+    }
+
+    private static Dependency dependency(MavenProject project) {
+        final Dependency dependency = new Dependency();
+        dependency.setGroupId(project.getGroupId());
+        dependency.setArtifactId(project.getArtifactId());
+        dependency.setVersion(project.getVersion());
+        return dependency;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inserter.close();
+        git.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
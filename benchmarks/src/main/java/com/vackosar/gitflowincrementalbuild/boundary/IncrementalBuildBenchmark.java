@@ -0,0 +1,124 @@
+package com.vackosar.gitflowincrementalbuild.boundary;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.vackosar.gitflowincrementalbuild.benchmark.SyntheticRepository;
+import com.vackosar.gitflowincrementalbuild.control.ChangedProjects;
+import com.vackosar.gitflowincrementalbuild.control.DifferentFiles;
+import com.vackosar.gitflowincrementalbuild.control.Modules;
+import com.vackosar.gitflowincrementalbuild.control.Property;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.logging.console.ConsoleLoggerManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.impl.StaticLoggerBinder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of one build measured separately on a {@link SyntheticRepository}. Every invocation gets a fresh session
+ * and injector, just like a build, while the repository is generated once per parameter combination.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class IncrementalBuildBenchmark {
+
+    @Param({"10", "500", "5000"})
+    public int modules;
+
+    @Param({"1000", "100000", "1000000"})
+    public int files;
+
+    @Param({"10", "1000"})
+    public int changedFiles;
+
+    @Param({"2", "8"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int fanOut;
+
+    private SyntheticRepository repository;
+    private MavenSession session;
+    private Injector injector;
+
+    @Setup(Level.Trial)
+    public void createRepository() throws Exception {
+        new StaticLoggerBinder(new ConsoleLoggerManager().getLoggerForComponent("Benchmark"));
+        Property.referenceBranch.setValue(SyntheticRepository.REFERENCE);
+        Property.uncommited.setValue("false");
+        Property.compareToMergeBase.setValue("false");
+        repository = SyntheticRepository.create(modules, files, changedFiles, depth, fanOut);
+    }
+
+    @Setup(Level.Invocation)
+    public void startBuild() {
+        final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        request.setGoals(new ArrayList<>(Arrays.asList("install")));
+        request.setBaseDirectory(repository.dir.toFile());
+        session = new MavenSession(null, request, new DefaultMavenExecutionResult(), new ArrayList<>(repository.projects));
+        injector = Guice.createInjector(new GuiceModule(new ConsoleLogger(Logger.LEVEL_ERROR, "Benchmark"), session));
+    }
+
+    @TearDown(Level.Invocation)
+    public void finishBuild() {
+        injector.getInstance(DifferentFiles.class).close();
+        repository.projects.forEach(IncrementalBuildBenchmark::resetProperties);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRepository() throws Exception {
+        repository.close();
+    }
+
+    @Benchmark
+    public Set<Path> differentFiles() throws Exception {
+        return injector.getInstance(DifferentFiles.class).get();
+    }
+
+    @Benchmark
+    public Set<MavenProject> changedProjects() throws Exception {
+        return injector.getInstance(ChangedProjects.class).get();
+    }
+
+    @Benchmark
+    public Map<Path, MavenProject> createPathMap() {
+        return new Modules().createPathMap(session);
+    }
+
+    @Benchmark
+    public MavenSession unchangedProjectsRemover() throws Exception {
+        injector.getInstance(UnchangedProjectsRemover.class).act();
+        return session;
+    }
+
+    private static void resetProperties(MavenProject project) {
+        project.getProperties().clear();
+    }
+}
@@ -2,18 +2,23 @@ package com.vackosar.gitflowincrementalbuild.boundary;
 
 import com.vackosar.gitflowincrementalbuild.control.Property;
 import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Singleton
 public class Configuration {
@@ -36,6 +41,36 @@ public class Configuration {
     public final boolean fetchReferenceBranch;
     public final Predicate<String> excludePathRegex;
     public final boolean failOnMissingGitDir;
+    public final boolean compareModuleTrees;
+    public final boolean diffCache;
+    public final Optional<Path> diffCacheDir;
+    public final int diffCacheSize;
+    public final long diffCacheBytes;
+    public final boolean mergeBaseIndex;
+    public final boolean checkoutBaseBranch;
+    public final boolean singlePassDiff;
+    public final String gitBackend;
+    public final String gitExecutable;
+    public final int diffParallelism;
+    public final double buildAllThreshold;
+    public final boolean aggregateModules;
+    public final List<String> includePaths;
+    public final List<String> excludePaths;
+    public final Optional<WindowCacheConfig> windowCacheConfig;
+    public final boolean conditionalFetch;
+    public final int stageParallelism;
+    public final String stageReport;
+    public final boolean isolateTestChanges;
+    public final boolean selectTests;
+    public final boolean compareAbi;
+    public final String abiStableDependents;
+    public final Optional<Path> abiDir;
+    public final boolean buildCache;
+    public final Optional<Path> buildCacheDir;
+    public final int buildCacheSize;
+    public final boolean skipInstalledUpstream;
+    public final boolean criticalPathOrder;
+    public final Optional<Path> buildHistoryFile;
 
     @Inject
     public Configuration(MavenSession session) throws IOException {
@@ -57,21 +92,91 @@ public class Configuration {
             fetchBaseBranch = Boolean.valueOf(Property.fetchBaseBranch.getValue());
             excludePathRegex = Pattern.compile(Property.excludePathRegex.getValue()).asPredicate();
             failOnMissingGitDir = Boolean.valueOf(Property.failOnMissingGitDir.getValue());
+            compareModuleTrees = Boolean.valueOf(Property.compareModuleTrees.getValue());
+            diffCache = Boolean.valueOf(Property.diffCache.getValue());
+            diffCacheDir = parseDir(session, Property.diffCacheDir.getValue());
+            diffCacheSize = Integer.parseInt(Property.diffCacheSize.getValue());
+            diffCacheBytes = Long.parseLong(Property.diffCacheBytes.getValue());
+            mergeBaseIndex = Boolean.valueOf(Property.mergeBaseIndex.getValue());
+            checkoutBaseBranch = Boolean.valueOf(Property.checkoutBaseBranch.getValue());
+            singlePassDiff = Boolean.valueOf(Property.singlePassDiff.getValue());
+            gitBackend = Property.gitBackend.getValue();
+            gitExecutable = Property.gitExecutable.getValue();
+            diffParallelism = parseParallelism(Property.diffParallelism.getValue());
+            buildAllThreshold = Double.parseDouble(Property.buildAllThreshold.getValue());
+            aggregateModules = Boolean.valueOf(Property.aggregateModules.getValue());
+            includePaths = parseList(Property.includePaths.getValue());
+            excludePaths = parseList(Property.excludePaths.getValue());
+            windowCacheConfig = parseWindowCacheConfig();
+            conditionalFetch = Boolean.valueOf(Property.conditionalFetch.getValue());
+            stageParallelism = parseParallelism(Property.stageParallelism.getValue());
+            stageReport = Property.stageReport.getValue();
+            isolateTestChanges = Boolean.valueOf(Property.isolateTestChanges.getValue());
+            selectTests = Boolean.valueOf(Property.selectTests.getValue());
+            compareAbi = Boolean.valueOf(Property.compareAbi.getValue());
+            abiStableDependents = Property.abiStableDependents.getValue();
+            abiDir = parseDir(session, Property.abiDir.getValue());
+            buildCache = Boolean.valueOf(Property.buildCache.getValue());
+            buildCacheDir = parseDir(session, Property.buildCacheDir.getValue());
+            buildCacheSize = Integer.parseInt(Property.buildCacheSize.getValue());
+            skipInstalledUpstream = Boolean.valueOf(Property.skipInstalledUpstream.getValue());
+            criticalPathOrder = Boolean.valueOf(Property.criticalPathOrder.getValue());
+            buildHistoryFile = parseDir(session, Property.buildHistoryFile.getValue());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
     private Optional<Path> parseKey(MavenSession session) throws IOException {
-        Path pomDir = session.getCurrentProject().getBasedir().toPath();
         String keyOptionValue = Property.repositorySshKey.getValue();
         if (keyOptionValue != null && ! keyOptionValue.isEmpty()) {
-            return Optional.of(pomDir.resolve(keyOptionValue).toAbsolutePath().toRealPath().normalize());
+            return Optional.of(getBaseDir(session).resolve(keyOptionValue).toAbsolutePath().toRealPath().normalize());
         } else {
             return Optional.empty();
         }
     }
 
+    private Optional<Path> parseDir(MavenSession session, String value) {
+        if (value != null && ! value.isEmpty()) {
+            return Optional.of(getBaseDir(session).resolve(value).toAbsolutePath().normalize());
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return base dir of the current project or, before projects are read, of the requested pom.
+     */
+    static Path getBaseDir(MavenSession session) {
+        if (session.getCurrentProject() != null) {
+            return session.getCurrentProject().getBasedir().toPath();
+        }
+        final MavenExecutionRequest request = session.getRequest();
+        return request.getPom() != null ? request.getPom().getAbsoluteFile().getParentFile().toPath() : Paths.get(request.getBaseDirectory());
+    }
+
+    private Optional<WindowCacheConfig> parseWindowCacheConfig() {
+        final Config config = new Config();
+        boolean configured = false;
+        for (Property property: Arrays.asList(Property.packedGitMMAP, Property.packedGitWindowSize, Property.packedGitOpenFiles,
+                Property.packedGitLimit, Property.deltaBaseCacheLimit)) {
+            if (! property.getValue().isEmpty()) {
+                config.setString("core", null, property.name(), property.getValue());
+                configured = true;
+            }
+        }
+        return configured ? Optional.of(new WindowCacheConfig().fromConfig(config)) : Optional.empty();
+    }
+
+    private List<String> parseList(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> ! s.isEmpty()).collect(Collectors.toList());
+    }
+
+    private int parseParallelism(String value) {
+        final int parallelism = Integer.parseInt(value);
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
     private void checkProperties() throws MavenExecutionException {
         try {
             System.getProperties().entrySet().stream().map(Map.Entry::getKey)
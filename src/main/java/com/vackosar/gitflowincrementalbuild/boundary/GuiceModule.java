@@ -8,6 +8,7 @@ import org.codehaus.plexus.logging.Logger;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.slf4j.impl.StaticLoggerBinder;
 
 import javax.inject.Singleton;
@@ -15,10 +16,12 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class GuiceModule extends AbstractModule {
 
     public static final String UNSUPPORTED_WORKTREE = "JGit unsupported separate worktree checkout detected from current git dir path: ";
+    private static final AtomicBoolean WINDOW_CACHE_INSTALLED = new AtomicBoolean();
     private final Logger logger;
     private final MavenSession mavenSession;
 
@@ -31,7 +34,7 @@ public class GuiceModule extends AbstractModule {
     @Singleton
     public Git provideGit(final StaticLoggerBinder staticLoggerBinder, final Configuration configuration) throws IOException, GitAPIException {
         final FileRepositoryBuilder builder = new FileRepositoryBuilder();
-        File pomDir = mavenSession.getCurrentProject().getBasedir().toPath().toFile();
+        File pomDir = Configuration.getBaseDir(mavenSession).toFile();
         builder.findGitDir(pomDir);
         if (builder.getGitDir() == null) {
             String gitDirNotFoundMessage = "Git repository root directory not found ascending from current working directory:'" + pomDir + "'.";
@@ -46,9 +49,27 @@ public class GuiceModule extends AbstractModule {
             throw new SkipExecutionException(UNSUPPORTED_WORKTREE + builder.getGitDir());
         }
         logger.info("Git dir is: " + String.valueOf(builder.getGitDir().getAbsolutePath()));
+        configuration.windowCacheConfig.ifPresent(windowCacheConfig -> {
+            logger.debug("Using pack window size " + windowCacheConfig.getPackedGitWindowSize() + ", mmap " + windowCacheConfig.isPackedGitMMAP()
+                    + ", pack limit " + windowCacheConfig.getPackedGitLimit() + ", open files " + windowCacheConfig.getPackedGitOpenFiles()
+                    + ", delta base cache " + windowCacheConfig.getDeltaBaseCacheLimit() + ".");
+            windowCacheConfig.install();
+            WINDOW_CACHE_INSTALLED.set(true);
+        });
         return Git.wrap(builder.build());
     }
 
+    /**
+     * The pack window settings apply to every JGit user of the JVM, so they are reset to JGit defaults once the session
+     * is over, as JGit does not expose the settings in place before.
+     */
+    static void restoreWindowCache(Logger logger) {
+        if (WINDOW_CACHE_INSTALLED.getAndSet(false)) {
+            logger.debug("Restoring default pack window settings.");
+            new WindowCacheConfig().install();
+        }
+    }
+
     private void reconfigureForWorktree(Configuration configuration, FileRepositoryBuilder builder) throws IOException {
 
         Path worktreeGitDir = builder.getGitDir().toPath().normalize().toAbsolutePath();
@@ -1,11 +1,19 @@
 package com.vackosar.gitflowincrementalbuild.boundary;
 
 import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.vackosar.gitflowincrementalbuild.control.AbiFingerprints;
+import com.vackosar.gitflowincrementalbuild.control.BuildCache;
+import com.vackosar.gitflowincrementalbuild.control.BuildHistory;
+import com.vackosar.gitflowincrementalbuild.control.DifferentFiles;
+import com.vackosar.gitflowincrementalbuild.control.InstalledModules;
 import com.vackosar.gitflowincrementalbuild.control.Property;
+import com.vackosar.gitflowincrementalbuild.control.Stages;
 import com.vackosar.gitflowincrementalbuild.entity.SkipExecutionException;
 import org.apache.maven.AbstractMavenLifecycleParticipant;
 import org.apache.maven.MavenExecutionException;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
@@ -13,12 +21,33 @@ import org.codehaus.plexus.util.ExceptionUtils;
 import org.eclipse.jgit.api.errors.GitAPIException;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @Component(role = AbstractMavenLifecycleParticipant.class)
 public class MavenLifecycleParticipant extends AbstractMavenLifecycleParticipant {
 
     @Requirement private Logger logger;
 
+    private EarlyStart earlyStart;
+    private Injector injector;
+
+    /**
+     * Only invoked when registered as core extension. Starts git preparation so that it overlaps with reading of
+     * project models. Its outcome is only used if no project defines different gib properties.
+     */
+    @Override
+    public void afterSessionStart(MavenSession session) {
+        if (Boolean.valueOf(Property.enabled.getValue()) && Boolean.valueOf(Property.earlyStart.getValue())) {
+            logger.debug("Starting git preparation before projects are read.");
+            earlyStart = new EarlyStart(session);
+        }
+    }
+
     @Override
     public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
         try {
@@ -38,14 +67,101 @@ public class MavenLifecycleParticipant extends AbstractMavenLifecycleParticipant
             } else {
                 throw new MavenExecutionException("Exception during gitflow-incremental-builder execution occurred.", e);
             }
+        } finally {
+            discardEarlyStart();
+        }
+    }
+
+    /**
+     * Writes the stage report only now, so that it is not removed by the clean phase of the build. API fingerprints
+     * are stored only after successful builds, when the class files match the sources. Successfully built modules
+     * are stored in the build cache and installed modules are marked with their source key.
+     * Build durations are recorded for critical path ordering. Pack window settings are restored last.
+     */
+    @Override
+    public void afterSessionEnd(MavenSession session) {
+        try {
+            storeResults(session);
+        } finally {
+            GuiceModule.restoreWindowCache(logger);
+        }
+    }
+
+    private void storeResults(MavenSession session) {
+        if (injector != null) {
+            try {
+                if (injector.getInstance(Configuration.class).buildCache && session.getResult() != null) {
+                    injector.getInstance(BuildCache.class).store(session);
+                }
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                logger.warn("Storing modules in build cache failed: " + e.getMessage());
+            }
+            try {
+                if (injector.getInstance(Configuration.class).skipInstalledUpstream && session.getResult() != null) {
+                    injector.getInstance(InstalledModules.class).record(session);
+                }
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                logger.warn("Recording source keys of installed modules failed: " + e.getMessage());
+            }
+            try {
+                if (injector.getInstance(Configuration.class).criticalPathOrder && session.getResult() != null) {
+                    injector.getInstance(BuildHistory.class).record(session);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Recording build durations failed: " + e.getMessage());
+            }
+            try {
+                if (injector.getInstance(Configuration.class).compareAbi && session.getResult() != null
+                        && ! session.getResult().hasExceptions()) {
+                    injector.getInstance(AbiFingerprints.class).store(session.getProjects());
+                }
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                logger.warn("Storing API fingerprints failed: " + e.getMessage());
+            }
+            try {
+                final String stageReport = injector.getInstance(Configuration.class).stageReport;
+                if (! stageReport.isEmpty()) {
+                    injector.getInstance(Stages.class).write(getBuildDir(session).resolve(stageReport));
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Writing stage report failed: " + e.getMessage());
+            }
+            injector = null;
         }
     }
 
     private void execute(MavenSession session) throws GitAPIException, IOException {
-        Guice
-                .createInjector(new GuiceModule(logger, session))
-                .getInstance(UnchangedProjectsRemover.class)
-                .act();
+        if (earlyStart != null && earlyStart.matches(session)) {
+            injector = earlyStart.join();
+            earlyStart = null;
+        } else {
+            discardEarlyStart();
+            injector = Guice.createInjector(new GuiceModule(logger, session));
+        }
+        injector.getInstance(UnchangedProjectsRemover.class).act();
+    }
+
+    private static Path getBuildDir(MavenSession session) {
+        final MavenProject project = session.getTopLevelProject();
+        return project.getBuild() != null && project.getBuild().getDirectory() != null
+                ? Paths.get(project.getBuild().getDirectory())
+                : project.getBasedir().toPath().resolve("target");
+    }
+
+    private void discardEarlyStart() {
+        if (earlyStart != null) {
+            logger.debug("Discarding git preparation started before projects were read.");
+            earlyStart.discard();
+            earlyStart = null;
+        }
+    }
+
+    private static Map<String, String> getProperties() {
+        final Map<String, String> properties = new TreeMap<>();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(Property.PREFIX))
+                .forEach(name -> properties.put(name, System.getProperty(name)));
+        return properties;
     }
 
     private void mergeCurrentProjectProperties(MavenSession mavenSession) {
@@ -55,4 +171,75 @@ public class MavenLifecycleParticipant extends AbstractMavenLifecycleParticipant
                 .forEach(e->System.setProperty(e.getKey().toString(), e.getValue().toString()));
     }
 
+    /**
+     * Git preparation running on a daemon thread with its own injector, which is reused once projects are read.
+     */
+    private class EarlyStart {
+
+        private final MavenSession session;
+        private final Map<String, String> properties = getProperties();
+        private final Injector injector;
+        private final CompletableFuture<Void> preparation;
+
+        private EarlyStart(MavenSession session) {
+            this.session = session;
+            this.injector = Guice.createInjector(new GuiceModule(logger, session));
+            this.preparation = new CompletableFuture<>();
+            final Thread thread = new Thread(this::prepare, "gib-early-start");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void prepare() {
+            try {
+                injector.getInstance(DifferentFiles.class).prepare();
+                preparation.complete(null);
+            } catch (Throwable e) {
+                preparation.completeExceptionally(e);
+            }
+        }
+
+        private boolean matches(MavenSession session) {
+            return this.session == session && properties.equals(getProperties());
+        }
+
+        /**
+         * @return injector holding prepared results. Failures of the preparation are rethrown as is.
+         */
+        private Injector join() throws GitAPIException, IOException {
+            try {
+                preparation.get();
+                return injector;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for git preparation.", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof GitAPIException) {
+                    throw (GitAPIException) cause;
+                } else if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        private void discard() {
+            try {
+                join();
+            } catch (Exception e) {
+                logger.debug("Discarded git preparation failed:", e);
+            }
+            try {
+                injector.getInstance(DifferentFiles.class).close();
+            } catch (RuntimeException e) {
+                logger.debug("Closing discarded git preparation failed:", e);
+            }
+        }
+    }
+
 }
@@ -1,16 +1,29 @@
 package com.vackosar.gitflowincrementalbuild.boundary;
 
 import com.google.inject.Singleton;
+import com.vackosar.gitflowincrementalbuild.control.AbiFingerprints;
+import com.vackosar.gitflowincrementalbuild.control.BuildCache;
+import com.vackosar.gitflowincrementalbuild.control.BuildHistory;
 import com.vackosar.gitflowincrementalbuild.control.ChangedProjects;
+import com.vackosar.gitflowincrementalbuild.control.DependencyGraph;
+import com.vackosar.gitflowincrementalbuild.control.InstalledModules;
+import com.vackosar.gitflowincrementalbuild.control.ModuleIndex;
+import com.vackosar.gitflowincrementalbuild.control.Stages;
+import com.vackosar.gitflowincrementalbuild.control.TestSelection;
 import org.apache.maven.execution.MavenSession;
-import org.apache.maven.model.Dependency;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.logging.Logger;
 import org.eclipse.jgit.api.errors.GitAPIException;
 
 import javax.inject.Inject;
 import java.io.IOException;
-import java.util.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -19,31 +32,75 @@ class UnchangedProjectsRemover {
 
     private static final String MAVEN_TEST_SKIP = "maven.test.skip";
     private static final String MAVEN_TEST_SKIP_EXEC = "skipTests";
+    private static final String MAVEN_MAIN_SKIP = "maven.main.skip";
+    private static final String TEST = "test";
+    private static final String FAIL_IF_NO_SPECIFIED_TESTS = "surefire.failIfNoSpecifiedTests";
+    private static final String NO_SELECTED_TESTS = "gib.NoSelectedTests";
     static final String TEST_JAR_DETECTED = "Dependency with test-jar goal detected. Will compile test sources.";
     private static final String GOAL_TEST_COMPILE = "test-compile";
     private static final String GOAL_TEST_JAR = "test-jar";
+    private static final String ABI_STABLE_DEPENDENTS_TEST = "test";
 
     @Inject private Configuration configuration;
     @Inject private Logger logger;
     @Inject private ChangedProjects changedProjects;
     @Inject private MavenSession mavenSession;
+    @Inject private DependencyGraph dependencyGraph;
+    @Inject private ModuleIndex moduleIndex;
+    @Inject private Stages stages;
+    @Inject private TestSelection testSelection;
+    @Inject private AbiFingerprints abiFingerprints;
+    @Inject private BuildCache buildCache;
+    @Inject private InstalledModules installedModules;
+    @Inject private BuildHistory buildHistory;
 
     void act() throws GitAPIException, IOException {
+        try {
+            act(stages.submit("module index", moduleIndex::getModuleCount),
+                    stages.submit("dependency graph", () -> {
+                        dependencyGraph.build();
+                        return null;
+                    }));
+        } finally {
+            stages.report();
+        }
+    }
+
+    /**
+     * Module index and dependency graph are built concurrently with the git stages started by changed projects.
+     * Reaching the build all threshold only stops pruning of the built projects, the later steps still apply.
+     */
+    private void act(CompletableFuture<Integer> moduleIndexStage, CompletableFuture<Void> dependencyGraphStage) throws GitAPIException, IOException {
         Set<MavenProject> changed = changedProjects.get();
+        Stages.join(moduleIndexStage);
         printDelimiter();
         logProjects(changed, "Changed Artifacts:");
-        Set<MavenProject> impacted = mavenSession.getProjects().stream()
-                .filter(changed::contains)
-                .flatMap(p -> getAllDependents(mavenSession.getProjects(), p).stream())
-                .collect(Collectors.toSet());
+        final boolean changedSaturated = changedProjects.isSaturated(changed);
+        if (changedSaturated) {
+            logger.info("Changed artifacts reached build all threshold of " + configuration.buildAllThreshold + ". Building all.");
+        }
+        Set<MavenProject> impacted = changedSaturated
+                ? new LinkedHashSet<>(mavenSession.getProjects())
+                : getImpacted(changed, dependencyGraphStage);
+        Stages.join(dependencyGraphStage);
+        final boolean saturated = changedSaturated || changedProjects.isSaturated(impacted);
+        if (saturated && ! changedSaturated) {
+            logger.info("Impacted artifacts reached build all threshold of " + configuration.buildAllThreshold + ". Building all.");
+        }
+        if (configuration.selectTests) {
+            selectTests(impacted);
+        }
         if (!configuration.buildAll) {
-            Set<MavenProject> rebuild = getRebuildProjects(impacted);
+            Set<MavenProject> required = saturated ? new LinkedHashSet<>(mavenSession.getProjects()) : getRebuildProjects(impacted);
+            Set<MavenProject> rebuild = configuration.buildCache && ! required.isEmpty()
+                    ? stages.run("build cache", () -> restoreFromBuildCache(required))
+                    : required;
             if (rebuild.isEmpty()) {
                 logger.info("No changed artifacts to build. Executing validate goal only.");
                 mavenSession.getGoals().clear();
                 mavenSession.getGoals().add("validate");
             } else {
-                mavenSession.setProjects(new ArrayList<>(rebuild));
+                mavenSession.setProjects(order(rebuild));
             }
         } else {
             mavenSession.getProjects().stream()
@@ -52,7 +109,107 @@ class UnchangedProjectsRemover {
         }
     }
 
-    private Set<MavenProject> getRebuildProjects(Set<MavenProject> changedProjects) {
+    private Set<MavenProject> getImpacted(Set<MavenProject> changed, CompletableFuture<Void> dependencyGraphStage) throws GitAPIException, IOException {
+        Set<MavenProject> testOnly = changed.stream().filter(this::isTestOnly).collect(Collectors.toSet());
+        if (! testOnly.isEmpty()) {
+            logProjects(testOnly, "Artifacts with test only changes:");
+        }
+        Set<MavenProject> abiStable = configuration.compareAbi
+                ? stages.run("api fingerprints", () -> abiFingerprints.getUnchanged(changed.stream()
+                        .filter(p -> ! testOnly.contains(p))
+                        .collect(Collectors.toList())))
+                : Collections.emptySet();
+        Set<MavenProject> impacted = stages.run("impacted projects", () -> {
+            Set<MavenProject> dependents = dependencyGraph.getAllDependents(mavenSession.getProjects().stream()
+                    .filter(changed::contains)
+                    .filter(p -> ! testOnly.contains(p))
+                    .filter(p -> ! abiStable.contains(p))
+                    .collect(Collectors.toList()));
+            dependents.addAll(testOnly);
+            dependents.addAll(abiStable);
+            return dependents;
+        }, dependencyGraphStage);
+        if (ABI_STABLE_DEPENDENTS_TEST.equals(configuration.abiStableDependents)) {
+            dependencyGraph.getDirectDependents(abiStable).stream()
+                    .filter(p -> ! impacted.contains(p))
+                    .forEach(p -> impacted.add(skipMainCompile(p)));
+        }
+        return impacted;
+    }
+
+    /**
+     * Dependents of projects with unchanged API only need their tests run. Their main classes of the previous build
+     * are kept, unless there are none.
+     */
+    private MavenProject skipMainCompile(MavenProject project) {
+        final String outputDirectory = project.getBuild().getOutputDirectory();
+        if (outputDirectory != null && Files.isDirectory(Paths.get(outputDirectory))) {
+            logger.debug(project.getArtifactId() + ": Upstream API unchanged. Running tests only.");
+            project.getProperties().setProperty(MAVEN_MAIN_SKIP, Boolean.TRUE.toString());
+        } else {
+            logger.debug(project.getArtifactId() + ": Upstream API unchanged, but no classes of previous build. Compiling.");
+        }
+        return project;
+    }
+
+    /**
+     * Restores cached projects and their upstream projects. Upstream projects neither cached nor installed are built.
+     */
+    private Set<MavenProject> restoreFromBuildCache(Set<MavenProject> rebuild) throws GitAPIException, IOException {
+        final Set<MavenProject> upstream = dependencyGraph.getAllDependencies(rebuild);
+        final Set<MavenProject> restored = buildCache.restore(upstream);
+        final Set<MavenProject> unavailable = installedModules.getUnavailable(upstream.stream()
+                .filter(p -> ! rebuild.contains(p))
+                .filter(p -> ! restored.contains(p))
+                .collect(Collectors.toList()));
+        return mavenSession.getProjects().stream()
+                .filter(upstream::contains)
+                .filter(p -> ! restored.contains(p))
+                .filter(p -> rebuild.contains(p) || unavailable.contains(p))
+                .map(p -> rebuild.contains(p) ? p : ifSkipDependenciesTest(p))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Keeps the reactor order, critical path first if configured.
+     */
+    private List<MavenProject> order(Set<MavenProject> rebuild) throws GitAPIException, IOException {
+        final List<MavenProject> projects = mavenSession.getProjects().stream().filter(rebuild::contains).collect(Collectors.toList());
+        return configuration.criticalPathOrder ? stages.run("critical path", () -> buildHistory.order(projects)) : projects;
+    }
+
+    /**
+     * Selection only covers unit tests, so only surefire properties are set. Without selected tests surefire is
+     * pointed at a class that does not exist, skipTests would turn off integration tests as well.
+     */
+    private void selectTests(Set<MavenProject> impacted) throws GitAPIException, IOException {
+        stages.run("test selection", () -> testSelection.select(impacted)).forEach((project, tests) -> {
+            if (tests.isEmpty()) {
+                logger.info(project.getArtifactId() + ": No tests selected.");
+                project.getProperties().setProperty(TEST, NO_SELECTED_TESTS);
+            } else {
+                logger.info(project.getArtifactId() + ": Selected " + tests.size() + " tests.");
+                logger.debug(project.getArtifactId() + ": Selected tests " + tests + ".");
+                project.getProperties().setProperty(TEST, String.join(",", tests));
+            }
+            project.getProperties().setProperty(FAIL_IF_NO_SPECIFIED_TESTS, Boolean.FALSE.toString());
+        });
+    }
+
+    /**
+     * Test changes of a project publishing a test jar reach its dependents, so they are not isolated.
+     */
+    private boolean isTestOnly(MavenProject project) {
+        if (! changedProjects.isTestOnly(project)) {
+            return false;
+        } else if (projectDeclaresTestJarGoal(project)) {
+            logger.debug(project.getArtifactId() + ": Test jar published, test only changes impact dependents.");
+            return false;
+        }
+        return true;
+    }
+
+    private Set<MavenProject> getRebuildProjects(Set<MavenProject> changedProjects) throws GitAPIException, IOException {
         if (configuration.makeUpstream) {
             return Stream.concat(changedProjects.stream(), collectDependencies(changedProjects)).collect(Collectors.toSet());
         } else {
@@ -60,11 +217,20 @@ class UnchangedProjectsRemover {
         }
     }
 
-    private Stream<MavenProject> collectDependencies(Set<MavenProject> changedProjects) {
-        return changedProjects.stream()
-                .flatMap(this::ifMakeUpstreamGetDependencies)
+    /**
+     * Upstream projects installed from the same sources are left out if configured.
+     */
+    private Stream<MavenProject> collectDependencies(Set<MavenProject> changedProjects) throws GitAPIException, IOException {
+        final Set<MavenProject> upstream = dependencyGraph.getAllDependencies(changedProjects).stream()
                 .filter(p -> ! changedProjects.contains(p))
-                .map(this::ifSkipDependenciesTest);
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        final Set<MavenProject> required = configuration.skipInstalledUpstream
+                ? stages.run("installed upstream", () -> installedModules.getUnavailable(upstream))
+                : upstream;
+        if (required.size() < upstream.size()) {
+            logger.info("Skipping " + (upstream.size() - required.size()) + " upstream artifacts installed from the same sources.");
+        }
+        return required.stream().map(this::ifSkipDependenciesTest);
     }
 
     private MavenProject ifSkipDependenciesTest(MavenProject mavenProject) {
@@ -97,46 +263,4 @@ class UnchangedProjectsRemover {
     private void printDelimiter() {
         logger.info("------------------------------------------------------------------------");
     }
-
-    private Set<MavenProject> getAllDependents(List<MavenProject> projects, MavenProject project) {
-        Set<MavenProject> result = new HashSet<>();
-        result.add(project);
-        for (MavenProject possibleDependent: projects) {
-            if (isDependentOf(possibleDependent, project)) {
-                result.addAll(getAllDependents(projects, possibleDependent));
-            }
-            if (project.equals(possibleDependent.getParent())) {
-                result.addAll(getAllDependents(projects, possibleDependent));
-            }
-        }
-        return result;
-    }
-
-    private Stream<MavenProject> ifMakeUpstreamGetDependencies(MavenProject mavenProject) {
-        return getAllDependencies(mavenSession.getProjects(), mavenProject).stream();
-    }
-
-    private Set<MavenProject> getAllDependencies(List<MavenProject> projects, MavenProject project) {
-        Set<MavenProject> dependencies = project.getDependencies().stream()
-                .map(d -> convert(projects, d)).filter(Optional::isPresent).map(Optional::get)
-                .flatMap(p -> getAllDependencies(projects, p).stream())
-                .collect(Collectors.toSet());
-        dependencies.add(project);
-        return dependencies;
-    }
-
-    private boolean equals(MavenProject project, Dependency dependency) {
-        return dependency.getArtifactId().equals(project.getArtifactId())
-                && dependency.getGroupId().equals(project.getGroupId())
-                && dependency.getVersion().equals(project.getVersion());
-    }
-
-    private Optional<MavenProject> convert(List<MavenProject> projects, Dependency dependency) {
-        return projects.stream().filter(p -> equals(p, dependency)).findFirst();
-    }
-
-    private boolean isDependentOf(MavenProject possibleDependent, MavenProject project) {
-        return possibleDependent.getDependencies().stream().anyMatch(d -> equals(project, d));
-    }
 }
-
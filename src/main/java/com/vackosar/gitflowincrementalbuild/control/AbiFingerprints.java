@@ -0,0 +1,317 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Fingerprints of the public API of modules: public and protected classes and members with their signatures, constant
+ * values and annotations, read from the class files of the last build. After each build, fingerprints of the built
+ * modules without uncommitted changes are stored in a file named by the id of the committed tree. A changed module
+ * keeps its API if its fingerprint matches the one stored for the tree it is compared to. That only holds if all its
+ * changes are Java sources compiled since, so classes of the current build must be newer than the changed files.
+ */
+@Singleton
+public class AbiFingerprints {
+
+    private static final String DEFAULT_DIR = "gib/abi";
+    private static final String ENTRY_SUFFIX = ".txt";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JAVA_SUFFIX = ".java";
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_SUPER_OR_SYNCHRONIZED = 0x0020;
+    private static final int ACC_NATIVE = 0x0100;
+    private static final int ACC_STRICT = 0x0800;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private Git git;
+    @Inject private DifferentFiles differentFiles;
+    @Inject private ChangedProjects changedProjects;
+    @Inject private ModuleIndex moduleIndex;
+
+    /**
+     * @return those of given changed projects whose API equals the one stored for the compared reference tree.
+     */
+    public Set<MavenProject> getUnchanged(Collection<MavenProject> projects) throws GitAPIException, IOException {
+        final Set<MavenProject> unchanged = new HashSet<>();
+        final Optional<Map<MavenProject, Set<Path>>> changedFiles = changedProjects.getChangedFiles();
+        final Optional<ObjectId> tree = differentFiles.getReferenceTree();
+        if (! changedFiles.isPresent() || ! tree.isPresent()) {
+            logger.info("Changed files not known. Not comparing module APIs.");
+            return unchanged;
+        }
+        final Map<String, String> stored = read(tree.get());
+        if (stored.isEmpty()) {
+            logger.info("No API fingerprints stored for reference tree " + tree.get().name() + ".");
+            return unchanged;
+        }
+        for (MavenProject project: projects) {
+            final Set<Path> files = changedFiles.get().get(project);
+            final String expected = stored.get(getModuleDir(project));
+            final Path classes = getClassesDir(project);
+            if (files != null && expected != null && isCompiled(project, files, classes) && expected.equals(fingerprint(classes))) {
+                logger.info(project.getArtifactId() + ": API unchanged.");
+                unchanged.add(project);
+            }
+        }
+        return unchanged;
+    }
+
+    /**
+     * Stores fingerprints of given built projects for the tree of HEAD, skipping projects with uncommitted changes.
+     */
+    public void store(Collection<MavenProject> projects) throws GitAPIException, IOException {
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(git.getRepository().getDirectory()).setMustExist(true).build();
+             Git current = Git.wrap(repository)) {
+            final ObjectId tree = repository.resolve(Constants.HEAD + "^{tree}");
+            if (tree == null) {
+                return;
+            }
+            final Set<String> uncommitted = current.status().call().getUncommittedChanges();
+            final Map<String, String> fingerprints = new TreeMap<>(read(tree));
+            for (MavenProject project: projects) {
+                final String dir = getModuleDir(project);
+                final Path classes = getClassesDir(project);
+                if (Files.isDirectory(classes) && uncommitted.stream().noneMatch(path -> dir.isEmpty() || path.startsWith(dir + "/"))) {
+                    fingerprints.put(dir, fingerprint(classes));
+                }
+            }
+            write(tree, fingerprints);
+        }
+    }
+
+    /**
+     * @return hash of the API of all classes in given dir.
+     */
+    static String fingerprint(Path classes) throws IOException {
+        final Set<String> api = new TreeSet<>();
+        try (Stream<Path> files = Files.walk(classes)) {
+            for (Path file: (Iterable<Path>) files.filter(f -> f.toString().endsWith(CLASS_SUFFIX))::iterator) {
+                api.add(getApi(Files.readAllBytes(file)));
+            }
+        }
+        final MessageDigest digest = Constants.newMessageDigest();
+        api.forEach(entry -> digest.update(Constants.encode(entry + "\n")));
+        return ObjectId.fromRaw(digest.digest()).name();
+    }
+
+    /**
+     * @return API of the class in given class file, empty if it is neither public nor protected.
+     */
+    static String getApi(byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != ClassIndex.MAGIC) {
+            throw new IOException("Not a class file.");
+        }
+        final ConstantPool pool = ConstantPool.read(in);
+        final int access = in.readUnsignedShort();
+        final StringBuilder api = new StringBuilder("class ").append(pool.getClassName(in.readUnsignedShort()))
+                .append(' ').append(access & ~ACC_SUPER_OR_SYNCHRONIZED)
+                .append(" extends ").append(pool.getClassName(in.readUnsignedShort()));
+        final Set<String> interfaces = new TreeSet<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            interfaces.add(pool.getClassName(in.readUnsignedShort()));
+        }
+        api.append(" implements ").append(interfaces);
+        final Set<String> members = new TreeSet<>();
+        readMembers(in, pool, "field ", members);
+        readMembers(in, pool, "method ", members);
+        api.append(readAttributes(in, pool));
+        if ((access & ACC_PUBLIC) == 0 || (access & ACC_SYNTHETIC) != 0) {
+            return "";
+        }
+        members.forEach(member -> api.append("\n  ").append(member));
+        return api.toString();
+    }
+
+    private static void readMembers(DataInputStream in, ConstantPool pool, String kind, Set<String> members) throws IOException {
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            final int access = in.readUnsignedShort();
+            final String member = kind + pool.getUtf8(in.readUnsignedShort()) + " " + pool.getUtf8(in.readUnsignedShort())
+                    + " " + (access & ~(ACC_SUPER_OR_SYNCHRONIZED | ACC_NATIVE | ACC_STRICT)) + readAttributes(in, pool);
+            if ((access & (ACC_PUBLIC | ACC_PROTECTED)) != 0 && (access & ACC_SYNTHETIC) == 0) {
+                members.add(member);
+            }
+        }
+    }
+
+    private static String readAttributes(DataInputStream in, ConstantPool pool) throws IOException {
+        final Set<String> attributes = new TreeSet<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            final String name = pool.getUtf8(in.readUnsignedShort());
+            final int length = in.readInt();
+            switch (name) {
+                case "Signature":
+                    attributes.add(name + "=" + pool.getUtf8(in.readUnsignedShort()));
+                    break;
+                case "ConstantValue":
+                    attributes.add(name + "=" + pool.getLiteral(in.readUnsignedShort()));
+                    break;
+                case "Exceptions":
+                    final Set<String> exceptions = new TreeSet<>();
+                    for (int j = in.readUnsignedShort(); j > 0; j--) {
+                        exceptions.add(pool.getClassName(in.readUnsignedShort()));
+                    }
+                    attributes.add(name + "=" + exceptions);
+                    break;
+                case "RuntimeVisibleAnnotations":
+                case "RuntimeInvisibleAnnotations":
+                    attributes.add(name + "=" + readAnnotations(in, pool));
+                    break;
+                case "RuntimeVisibleParameterAnnotations":
+                case "RuntimeInvisibleParameterAnnotations":
+                    final List<String> parameters = new ArrayList<>();
+                    for (int j = in.readUnsignedByte(); j > 0; j--) {
+                        parameters.add(readAnnotations(in, pool));
+                    }
+                    attributes.add(name + "=" + parameters);
+                    break;
+                case "AnnotationDefault":
+                    attributes.add(name + "=" + readElementValue(in, pool));
+                    break;
+                default:
+                    in.readFully(new byte[length]);
+            }
+        }
+        return attributes.isEmpty() ? "" : " " + attributes;
+    }
+
+    private static String readAnnotations(DataInputStream in, ConstantPool pool) throws IOException {
+        final Set<String> annotations = new TreeSet<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            annotations.add(readAnnotation(in, pool));
+        }
+        return annotations.toString();
+    }
+
+    private static String readAnnotation(DataInputStream in, ConstantPool pool) throws IOException {
+        final String type = pool.getUtf8(in.readUnsignedShort());
+        final Map<String, String> values = new TreeMap<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            values.put(pool.getUtf8(in.readUnsignedShort()), readElementValue(in, pool));
+        }
+        return type + values;
+    }
+
+    private static String readElementValue(DataInputStream in, ConstantPool pool) throws IOException {
+        final char tag = (char) in.readUnsignedByte();
+        switch (tag) {
+            case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z':
+                return tag + pool.getLiteral(in.readUnsignedShort());
+            case 's':
+                return "s" + pool.getUtf8(in.readUnsignedShort());
+            case 'e':
+                return "e" + pool.getUtf8(in.readUnsignedShort()) + "." + pool.getUtf8(in.readUnsignedShort());
+            case 'c':
+                return "c" + pool.getUtf8(in.readUnsignedShort());
+            case '@':
+                return "@" + readAnnotation(in, pool);
+            case '[':
+                final List<String> values = new ArrayList<>();
+                for (int i = in.readUnsignedShort(); i > 0; i--) {
+                    values.add(readElementValue(in, pool));
+                }
+                return values.toString();
+            default:
+                throw new IOException("Unknown annotation element value tag " + tag + ".");
+        }
+    }
+
+    /**
+     * Classes must be newer than all changed files, which must be existing Java sources.
+     */
+    private boolean isCompiled(MavenProject project, Set<Path> files, Path classes) throws IOException {
+        if (! Files.isDirectory(classes)) {
+            return false;
+        }
+        final Path basedir = moduleIndex.getBaseDir(project);
+        long changed = 0;
+        for (Path file: files) {
+            final Path source = basedir.resolve(file);
+            if (! file.toString().endsWith(JAVA_SUFFIX) || ! Files.isRegularFile(source)) {
+                logger.debug(project.getArtifactId() + ": Changed file " + file + " may change API.");
+                return false;
+            }
+            changed = Math.max(changed, Files.getLastModifiedTime(source).toMillis());
+        }
+        try (Stream<Path> compiled = Files.walk(classes)) {
+            final long newest = compiled.filter(f -> f.toString().endsWith(CLASS_SUFFIX))
+                    .mapToLong(f -> f.toFile().lastModified()).max().orElse(0);
+            if (newest < changed) {
+                logger.debug(project.getArtifactId() + ": Classes are older than changed sources.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getModuleDir(MavenProject project) throws IOException {
+        final Path workTree = git.getRepository().getWorkTree().toPath().toRealPath();
+        return workTree.relativize(moduleIndex.getBaseDir(project)).toString().replace(File.separatorChar, '/');
+    }
+
+    private static Path getClassesDir(MavenProject project) {
+        final String dir = project.getBuild() == null ? null : project.getBuild().getOutputDirectory();
+        return project.getBasedir().toPath().resolve(dir == null ? "target/classes" : dir);
+    }
+
+    private Path getDir() {
+        return configuration.abiDir.orElse(git.getRepository().getDirectory().toPath().resolve(DEFAULT_DIR));
+    }
+
+    private Map<String, String> read(ObjectId tree) throws IOException {
+        final Path entry = getDir().resolve(tree.name() + ENTRY_SUFFIX);
+        final Map<String, String> fingerprints = new HashMap<>();
+        if (Files.isRegularFile(entry)) {
+            for (String line: Files.readAllLines(entry, StandardCharsets.UTF_8)) {
+                final int separator = line.indexOf(' ');
+                if (separator > 0) {
+                    fingerprints.put(line.substring(separator + 1), line.substring(0, separator));
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    private void write(ObjectId tree, Map<String, String> fingerprints) throws IOException {
+        final Path dir = getDir();
+        Files.createDirectories(dir);
+        final Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+        Files.write(tmp, fingerprints.entrySet().stream().map(e -> e.getValue() + " " + e.getKey()).collect(Collectors.toList()), StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(tree.name() + ENTRY_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Stored API fingerprints of " + fingerprints.size() + " modules for tree " + tree.name() + ".");
+    }
+}
@@ -0,0 +1,146 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folds a diff straight into a bit set of changed modules indexed by reactor position. Owners are looked up by the raw
+ * path bytes of the tree walk in a byte trie of module dirs, so no path objects are created per changed file and
+ * memory stays proportional to the number of modules. Only the exclude regex, when set, needs the path as a string.
+ */
+@Singleton
+public class AggregatedModuleDiff {
+
+    private static final int UNMAPPED_SAMPLE = 10;
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private MavenSession mavenSession;
+    @Inject private PathPatterns pathPatterns;
+    @Inject private ObjectAccess objectAccess;
+    @Inject private Stages stages;
+
+    /**
+     * @param moduleDirs projects keyed by their '/' separated base dir relative to the work tree.
+     */
+    public Set<MavenProject> get(Repository repository, RevTree base, RevTree reference, Map<String, MavenProject> moduleDirs, Path workTree) throws IOException {
+        final List<MavenProject> projects = mavenSession.getProjects();
+        final Node root = createTrie(moduleDirs, projects);
+        final boolean excluding = ! Property.excludePathRegex.defaultValue.equals(Property.excludePathRegex.getValue());
+        final BitSet changed = new BitSet(projects.size());
+        final List<String> unmappedSample = new ArrayList<>();
+        int modules = 0;
+        int files = 0;
+        int excluded = 0;
+        int unmapped = 0;
+        try (TreeWalk treeWalk = new TreeWalk(repository, objectAccess.getReader())) {
+            treeWalk.addTree(base);
+            treeWalk.addTree(reference);
+            treeWalk.setFilter(pathPatterns.and(TreeFilter.ANY_DIFF));
+            treeWalk.setRecursive(true);
+            while (modules < moduleDirs.size() && treeWalk.next()) {
+                files++;
+                final byte[] path = treeWalk.getRawPath();
+                final int length = treeWalk.getPathLength();
+                if (excluding && configuration.excludePathRegex.test(workTree.resolve(RawParseUtils.decode(path, 0, length)).normalize().toString())) {
+                    excluded++;
+                    continue;
+                }
+                final int owner = findOwner(root, path, length);
+                if (owner < 0) {
+                    unmapped++;
+                    if (unmappedSample.size() < UNMAPPED_SAMPLE) {
+                        unmappedSample.add(RawParseUtils.decode(path, 0, length));
+                    }
+                } else if (!changed.get(owner)) {
+                    changed.set(owner);
+                    modules++;
+                }
+            }
+        }
+        logger.info("Aggregated " + files + " changed files into " + modules + " modules, " + excluded + " excluded, " + unmapped + " outside build project.");
+        unmappedSample.forEach(path -> logger.warn("Changed file outside build project: " + path));
+        stages.count("changed files", files);
+        stages.count("excluded files", excluded);
+        stages.count("files outside build project", unmapped);
+        final Set<MavenProject> result = new HashSet<>();
+        changed.stream().mapToObj(projects::get).forEach(result::add);
+        return result;
+    }
+
+    private static int findOwner(Node root, byte[] path, int length) {
+        int owner = root.project;
+        Node node = root;
+        for (int i = 0; i < length && node != null; i++) {
+            if (path[i] == '/' && node.project >= 0) {
+                owner = node.project;
+            }
+            node = node.child(path[i]);
+        }
+        return owner;
+    }
+
+    private static Node createTrie(Map<String, MavenProject> moduleDirs, List<MavenProject> projects) {
+        final Map<MavenProject, Integer> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < projects.size(); i++) {
+            indexes.putIfAbsent(projects.get(i), i);
+        }
+        final Node root = new Node();
+        moduleDirs.forEach((dir, project) -> {
+            Node node = root;
+            for (byte b: dir.getBytes(StandardCharsets.UTF_8)) {
+                node = node.add(b);
+            }
+            node.project = indexes.getOrDefault(project, -1);
+        });
+        return root;
+    }
+
+    private static class Node {
+        private byte[] keys = new byte[0];
+        private Node[] children = new Node[0];
+        private int project = -1;
+
+        private Node child(byte key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node add(byte key) {
+            Node child = child(key);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                keys[keys.length - 1] = key;
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On disk cache of module build outputs keyed by the committed subtree id and effective POM of the module and of all
+ * its in-reactor dependencies. An entry holds the classes of the module and its artifacts named as in the local
+ * repository. Restoring an entry copies the classes back and installs the artifacts, so the module is not built.
+ * Modules without a key from {@link ModuleKeys} are not cached. Least recently used entries are evicted once the cache holds more than
+ * the configured number of entries.
+ */
+@Singleton
+public class BuildCache {
+
+    private static final String DEFAULT_DIR = "gib/build-cache";
+    private static final String CLASSES = "classes";
+    private static final String REPOSITORY = "repository";
+    private static final String POM = "pom";
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private Git git;
+    @Inject private ModuleKeys moduleKeys;
+    @Inject private InstalledModules installedModules;
+
+    /**
+     * Computes keys of given projects and restores those found in the cache.
+     *
+     * @return restored projects.
+     */
+    public Set<MavenProject> restore(Collection<MavenProject> projects) throws GitAPIException, IOException {
+        moduleKeys.compute(projects);
+        final Set<MavenProject> restored = new LinkedHashSet<>();
+        for (MavenProject project: projects) {
+            final Optional<String> key = moduleKeys.get(project);
+            final Path entry = key.map(getDir()::resolve).orElse(null);
+            if (entry != null && Files.isDirectory(entry)) {
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+                final Path classes = entry.resolve(CLASSES);
+                if (Files.isDirectory(classes)) {
+                    FileUtils.copyDirectoryStructure(classes.toFile(), getClassesDir(project).toFile());
+                }
+                FileUtils.copyDirectoryStructure(entry.resolve(REPOSITORY).toFile(), installedModules.getDir(project).toFile());
+                installedModules.record(project);
+                logger.info(project.getArtifactId() + ": Restored from build cache " + key.get() + ".");
+                restored.add(project);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Stores outputs of the successfully built projects of given session which have a key and are not cached yet.
+     * Keys not computed before the build, e.g. because all projects were built, are computed now.
+     */
+    public void store(MavenSession session) throws GitAPIException, IOException {
+        moduleKeys.compute(session.getProjects());
+        final Path dir = getDir();
+        int stored = 0;
+        for (MavenProject project: session.getProjects()) {
+            final String key = moduleKeys.get(project).orElse(null);
+            final Map<String, File> files = getFiles(project);
+            if (key == null || files.isEmpty() || Files.isDirectory(dir.resolve(key))
+                    || ! (session.getResult().getBuildSummary(project) instanceof BuildSuccess)) {
+                continue;
+            }
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempDirectory(dir, "entry");
+            final Path classes = getClassesDir(project);
+            if (Files.isDirectory(classes)) {
+                FileUtils.copyDirectoryStructure(classes.toFile(), tmp.resolve(CLASSES).toFile());
+            }
+            final Path repository = Files.createDirectories(tmp.resolve(REPOSITORY));
+            for (Map.Entry<String, File> file: files.entrySet()) {
+                Files.copy(file.getValue().toPath(), repository.resolve(file.getKey()));
+            }
+            try {
+                Files.move(tmp, dir.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+                stored++;
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                FileUtils.deleteDirectory(tmp.toFile());
+            }
+        }
+        if (stored > 0) {
+            logger.info("Stored " + stored + " modules in build cache.");
+            evict(dir);
+        }
+    }
+
+    /**
+     * @return existing artifact files of given project by their name in the local repository, empty if it was not
+     * packaged.
+     */
+    private static Map<String, File> getFiles(MavenProject project) {
+        final Map<String, File> files = new TreeMap<>();
+        final Artifact artifact = project.getArtifact();
+        if (POM.equals(project.getPackaging())) {
+            files.put(InstalledModules.getFileName(artifact, project), project.getFile());
+            return files;
+        } else if (artifact == null || artifact.getFile() == null || ! artifact.getFile().isFile()) {
+            return files;
+        }
+        files.put(InstalledModules.getFileName(artifact, project), artifact.getFile());
+        files.put(project.getArtifactId() + "-" + project.getVersion() + "." + POM, project.getFile());
+        project.getAttachedArtifacts().stream()
+                .filter(attached -> attached.getFile() != null && attached.getFile().isFile())
+                .forEach(attached -> files.put(InstalledModules.getFileName(attached, project), attached.getFile()));
+        return files;
+    }
+
+    private static Path getClassesDir(MavenProject project) {
+        final String dir = project.getBuild() == null ? null : project.getBuild().getOutputDirectory();
+        return project.getBasedir().toPath().resolve(dir == null ? "target/classes" : dir);
+    }
+
+    private Path getDir() {
+        return configuration.buildCacheDir.orElse(git.getRepository().getDirectory().toPath().resolve(DEFAULT_DIR));
+    }
+
+    private void evict(Path dir) throws IOException {
+        final List<Path> entries;
+        try (Stream<Path> files = Files.list(dir)) {
+            entries = files.filter(Files::isDirectory)
+                    .filter(p -> ! p.getFileName().toString().startsWith("entry"))
+                    .sorted(Comparator.comparing(BuildCache::lastModified).reversed())
+                    .collect(Collectors.toList());
+        }
+        for (Path stale: entries.subList(Math.min(configuration.buildCacheSize, entries.size()), entries.size())) {
+            logger.debug("Evicting cached module build: " + stale);
+            FileUtils.deleteDirectory(stale.toFile());
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.BuildSummary;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.api.Git;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Build durations of modules recorded from earlier sessions, used to order a reactor critical path first. The weight
+ * of a module is its duration plus the largest weight of its dependents, so the heaviest weight is the length of the
+ * critical path. Modules are ordered topologically, taking the ready module of largest weight first, so that parallel
+ * builds start the longest chains early. Modules without recorded duration count with the average duration.
+ */
+@Singleton
+public class BuildHistory {
+
+    private static final String DEFAULT_FILE = "gib/build-history.txt";
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private Git git;
+    @Inject private DependencyGraph dependencyGraph;
+    @Inject private Stages stages;
+
+    /**
+     * @return given projects ordered critical path first.
+     */
+    public List<MavenProject> order(List<MavenProject> projects) throws IOException {
+        final Map<String, Long> durations = read();
+        final long unknown = Math.max(1, Math.round(durations.values().stream().mapToLong(Long::longValue).average().orElse(1)));
+        final Set<MavenProject> included = new LinkedHashSet<>(projects);
+        final Map<MavenProject, List<MavenProject>> dependents = new IdentityHashMap<>();
+        final Map<MavenProject, Integer> pending = new IdentityHashMap<>();
+        for (MavenProject project: projects) {
+            final List<MavenProject> direct = dependencyGraph.getDirectDependents(Collections.singleton(project)).stream()
+                    .filter(included::contains).collect(Collectors.toList());
+            dependents.put(project, direct);
+            direct.forEach(dependent -> pending.merge(dependent, 1, Integer::sum));
+        }
+        final List<MavenProject> sorted = sort(projects, dependents, new IdentityHashMap<>(pending));
+        final Map<MavenProject, Long> weights = new IdentityHashMap<>();
+        final Map<MavenProject, MavenProject> next = new IdentityHashMap<>();
+        for (int i = sorted.size() - 1; i >= 0; i--) {
+            final MavenProject project = sorted.get(i);
+            long heaviest = 0;
+            for (MavenProject dependent: dependents.get(project)) {
+                if (weights.getOrDefault(dependent, 0L) > heaviest) {
+                    heaviest = weights.get(dependent);
+                    next.put(project, dependent);
+                }
+            }
+            weights.put(project, durations.getOrDefault(key(project), unknown) + heaviest);
+        }
+        final Map<MavenProject, Integer> positions = new IdentityHashMap<>();
+        projects.forEach(project -> positions.putIfAbsent(project, positions.size()));
+        final PriorityQueue<MavenProject> ready = new PriorityQueue<>(Comparator
+                .comparing((MavenProject project) -> weights.get(project)).reversed()
+                .thenComparing(positions::get));
+        projects.stream().filter(project -> ! pending.containsKey(project)).forEach(ready::add);
+        final List<MavenProject> ordered = new ArrayList<>();
+        while (! ready.isEmpty()) {
+            final MavenProject project = ready.poll();
+            ordered.add(project);
+            for (MavenProject dependent: dependents.get(project)) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (ordered.size() < projects.size()) {
+            final Set<MavenProject> done = Collections.newSetFromMap(new IdentityHashMap<>());
+            done.addAll(ordered);
+            projects.stream().filter(project -> ! done.contains(project)).forEach(ordered::add);
+        }
+        report(ordered, weights, next, durations.isEmpty());
+        return ordered;
+    }
+
+    /**
+     * Records build durations of the successfully built projects of given session, averaged with earlier durations.
+     */
+    public void record(MavenSession session) throws IOException {
+        final Map<String, Long> durations = new TreeMap<>(read());
+        for (MavenProject project: session.getProjects()) {
+            final BuildSummary summary = session.getResult().getBuildSummary(project);
+            if (summary instanceof BuildSuccess) {
+                durations.merge(key(project), summary.getTime(), (earlier, current) -> (earlier + current) / 2);
+            }
+        }
+        final Path file = getFile();
+        Files.createDirectories(file.getParent());
+        final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tmp, durations.entrySet().stream().map(e -> e.getKey() + " " + e.getValue()).collect(Collectors.toList()), StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return topological order of given projects keeping their order where possible.
+     */
+    private static List<MavenProject> sort(List<MavenProject> projects, Map<MavenProject, List<MavenProject>> dependents, Map<MavenProject, Integer> pending) {
+        final Deque<MavenProject> ready = projects.stream().filter(project -> ! pending.containsKey(project))
+                .collect(Collectors.toCollection(ArrayDeque::new));
+        final List<MavenProject> sorted = new ArrayList<>();
+        while (! ready.isEmpty()) {
+            final MavenProject project = ready.poll();
+            sorted.add(project);
+            for (MavenProject dependent: dependents.get(project)) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return sorted;
+    }
+
+    private void report(List<MavenProject> ordered, Map<MavenProject, Long> weights, Map<MavenProject, MavenProject> next, boolean unrecorded) {
+        if (ordered.isEmpty()) {
+            return;
+        }
+        final MavenProject start = ordered.stream().max(Comparator.comparing(project -> weights.getOrDefault(project, 0L))).get();
+        final List<String> path = new ArrayList<>();
+        for (MavenProject project = start; project != null; project = next.get(project)) {
+            path.add(project.getArtifactId());
+        }
+        final long length = weights.getOrDefault(start, 0L);
+        logger.info("Critical path of " + (unrecorded ? path.size() + " modules, no durations recorded" : length + " ms") + ": " + String.join(" -> ", path));
+        stages.count("critical path ms", length);
+    }
+
+    private Map<String, Long> read() throws IOException {
+        final Path file = getFile();
+        final Map<String, Long> durations = new HashMap<>();
+        if (Files.isRegularFile(file)) {
+            for (String line: Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                final int separator = line.lastIndexOf(' ');
+                if (separator > 0) {
+                    durations.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+                }
+            }
+        }
+        return durations;
+    }
+
+    private Path getFile() {
+        return configuration.buildHistoryFile.orElse(git.getRepository().getDirectory().toPath().resolve(DEFAULT_FILE));
+    }
+
+    private static String key(MavenProject project) {
+        return project.getGroupId() + ":" + project.getArtifactId();
+    }
+}
@@ -1,6 +1,8 @@
 package com.vackosar.gitflowincrementalbuild.control;
 
-import org.apache.maven.execution.MavenSession;
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Resource;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.logging.Logger;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -9,37 +11,115 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
 public class ChangedProjects {
 
+    @Inject private Configuration configuration;
     @Inject private Logger logger;
     @Inject private DifferentFiles differentFiles;
-    @Inject private MavenSession mavenSession;
-    @Inject private Modules modules;
+    @Inject private ModuleIndex moduleIndex;
+    @Inject private Stages stages;
+
+    private final Map<MavenProject, Boolean> testOnly = new HashMap<>();
+    private final Map<MavenProject, List<Path>> testDirs = new IdentityHashMap<>();
+    private Map<MavenProject, Set<Path>> changedFiles;
 
     public Set<MavenProject> get() throws GitAPIException, IOException {
-        return differentFiles.get().stream()
-                .map(path -> findProject(path, mavenSession))
-                .filter(project -> project != null)
-                .collect(Collectors.toSet());
+        if (differentFiles.resolvesModules()) {
+            return differentFiles.getChangedModules();
+        }
+        final Set<MavenProject> changed = new HashSet<>();
+        final AtomicLong unmapped = new AtomicLong();
+        final AtomicBoolean skipped = new AtomicBoolean();
+        final Map<MavenProject, Set<Path>> files = new IdentityHashMap<>();
+        differentFiles.get(path -> {
+            final MavenProject project = moduleIndex.findProject(path);
+            if (project != null) {
+                if (recordsFiles()) {
+                    files.computeIfAbsent(project, p -> new HashSet<>()).add(moduleIndex.getBaseDir(project).relativize(path));
+                }
+                final Change change = configuration.isolateTestChanges ? classify(project, path) : Change.MAIN;
+                logger.debug("Changed file: " + path + (configuration.isolateTestChanges ? " (" + change.name().toLowerCase() + ")" : ""));
+                changed.add(project);
+                testOnly.merge(project, change == Change.TEST, Boolean::logicalAnd);
+            } else {
+                logger.warn("Changed file outside build project: " + path);
+                unmapped.incrementAndGet();
+            }
+            if (isSaturated(changed)) {
+                logger.info("Changed modules reached build all threshold. Skipping rest of diff.");
+                skipped.set(true);
+                return false;
+            }
+            return true;
+        });
+        stages.count("files outside build project", unmapped.get());
+        if (recordsFiles() && unmapped.get() == 0 && ! skipped.get()) {
+            changedFiles = files;
+        }
+        return changed;
+    }
+
+    /**
+     * @return changed files of each changed project relative to its base dir. Empty unless tests are selected or APIs
+     * compared and all changed files were found within projects.
+     */
+    public Optional<Map<MavenProject, Set<Path>>> getChangedFiles() {
+        return Optional.ofNullable(changedFiles);
+    }
+
+    private boolean recordsFiles() {
+        return configuration.selectTests || configuration.compareAbi;
     }
 
-    private MavenProject findProject(Path diffPath, MavenSession mavenSession) {
-        Map<Path, MavenProject> map = modules.createPathMap(mavenSession);
-        Path path = diffPath;
-        while (path != null && ! map.containsKey(path)) {
-            path = path.getParent();
+    /**
+     * @return whether all files found changed in given project are test sources or resources. Always false unless
+     * test changes are isolated and changes are resolved from files.
+     */
+    public boolean isTestOnly(MavenProject project) {
+        return testOnly.getOrDefault(project, false);
+    }
+
+    private Change classify(MavenProject project, Path path) {
+        final Path relative = moduleIndex.getBaseDir(project).relativize(path);
+        if (relative.toString().equals(project.getFile().getName())) {
+            return Change.BUILD;
         }
-        if (path != null) {
-            logger.debug("Changed file: " + diffPath);
-            return map.get(path);
-        } else {
-            logger.warn("Changed file outside build project: " + diffPath);
-            return null;
+        return testDirs.computeIfAbsent(project, p -> Modules.getRelativeDirs(p, getTestDirs(p))).stream()
+                .anyMatch(relative::startsWith) ? Change.TEST : Change.MAIN;
+    }
+
+    private static List<String> getTestDirs(MavenProject project) {
+        final List<String> dirs = new ArrayList<>();
+        dirs.add("src/test");
+        final Build build = project.getBuild();
+        if (build != null) {
+            dirs.add(build.getTestSourceDirectory());
+            build.getTestResources().stream().map(Resource::getDirectory).forEach(dirs::add);
         }
+        return dirs;
+    }
+
+    private enum Change {
+        MAIN, TEST, BUILD
+    }
+
+    /**
+     * @return whether given projects make up at least the build all threshold fraction of all modules.
+     */
+    public boolean isSaturated(Collection<MavenProject> projects) {
+        return (double) projects.size() / moduleIndex.getModuleCount() >= configuration.buildAllThreshold;
     }
 }
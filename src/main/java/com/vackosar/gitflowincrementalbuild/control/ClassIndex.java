@@ -0,0 +1,126 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bytecode level class dependency index of a class output dir. References are read from the constant pool: class
+ * entries and the class names in descriptors and signatures. Classes are reduced to their top level class in internal
+ * form, e.g. com/example/Foo for com/example/Foo$Bar. Parsed class files are cached in a file keyed by their content
+ * hash, so only class files changed since the last run are parsed again.
+ */
+@Singleton
+public class ClassIndex {
+
+    static final int MAGIC = 0xCAFEBABE;
+    private static final String CLASS_SUFFIX = ".class";
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\w/$]+)[;<]");
+
+    @Inject private Stages stages;
+
+    /**
+     * @return top level classes of given dir mapped to the top level classes they reference, empty if the dir does
+     * not exist.
+     */
+    public Map<String, Set<String>> get(Path classesDir, Path cacheFile) throws IOException {
+        final Map<String, Set<String>> index = new HashMap<>();
+        if (! Files.isDirectory(classesDir)) {
+            return index;
+        }
+        final Map<String, String> cache = readCache(cacheFile);
+        final List<String> lines = new ArrayList<>();
+        int parsed = 0;
+        try (Stream<Path> files = Files.walk(classesDir)) {
+            for (Path file: (Iterable<Path>) files.filter(f -> f.toString().endsWith(CLASS_SUFFIX))::iterator) {
+                final byte[] bytes = Files.readAllBytes(file);
+                final String hash = ObjectId.fromRaw(Constants.newMessageDigest().digest(bytes)).name();
+                String line = cache.get(hash);
+                if (line == null) {
+                    line = hash + " " + String.join(" ", parse(bytes));
+                    parsed++;
+                }
+                lines.add(line);
+                final List<String> entry = Arrays.asList(line.split(" "));
+                index.computeIfAbsent(entry.get(1), c -> new TreeSet<>()).addAll(entry.subList(2, entry.size()));
+            }
+        }
+        index.forEach((name, references) -> references.remove(name));
+        stages.count("parsed classes", parsed);
+        stages.count("cached classes", lines.size() - parsed);
+        if (parsed > 0 || lines.size() != cache.size()) {
+            writeCache(cacheFile, lines);
+        }
+        return index;
+    }
+
+    /**
+     * @return top level name of the class in given class file followed by the top level classes it references.
+     */
+    static List<String> parse(byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file.");
+        }
+        final ConstantPool pool = ConstantPool.read(in);
+        in.readUnsignedShort();
+        final String name = topLevel(pool.getClassName(in.readUnsignedShort()));
+        final Set<String> references = new TreeSet<>();
+        for (int i = 1; i < pool.size(); i++) {
+            if (pool.isClass(i) && ! pool.getClassName(i).startsWith("[")) {
+                references.add(topLevel(pool.getClassName(i)));
+            } else if (pool.getUtf8(i) != null && pool.getUtf8(i).indexOf(';') > 0) {
+                final Matcher matcher = DESCRIPTOR_CLASS.matcher(pool.getUtf8(i));
+                while (matcher.find()) {
+                    references.add(topLevel(matcher.group(1)));
+                }
+            }
+        }
+        references.remove(name);
+        final List<String> result = new ArrayList<>();
+        result.add(name);
+        result.addAll(references);
+        return result;
+    }
+
+    private static String topLevel(String name) {
+        final int nested = name.indexOf('$');
+        return nested > 0 ? name.substring(0, nested) : name;
+    }
+
+    private static Map<String, String> readCache(Path cacheFile) throws IOException {
+        if (! Files.isRegularFile(cacheFile)) {
+            return new HashMap<>();
+        }
+        return Files.readAllLines(cacheFile, StandardCharsets.UTF_8).stream()
+                .filter(line -> line.indexOf(' ') > 0)
+                .collect(Collectors.toMap(line -> line.substring(0, line.indexOf(' ')), line -> line, (a, b) -> a));
+    }
+
+    private static void writeCache(Path cacheFile, List<String> lines) throws IOException {
+        Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+        final Path tmp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), cacheFile.getFileName().toString(), ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
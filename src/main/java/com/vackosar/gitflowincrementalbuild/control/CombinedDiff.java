@@ -0,0 +1,123 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lists committed, staged and unstaged changes in a single walk over the base, reference and HEAD trees, the index
+ * and the working tree. Working tree files are compared to the index by stat data only, falling back to content for
+ * racily clean entries. Untracked directories are never descended into.
+ */
+@Singleton
+public class CombinedDiff {
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private PathPatterns pathPatterns;
+    @Inject private ObjectAccess objectAccess;
+
+    public Set<Path> get(Repository repository, RevTree base, RevTree reference, Path workTree) throws IOException {
+        final Set<Path> paths = new HashSet<>();
+        int committed = 0;
+        int staged = 0;
+        int unstaged = 0;
+        try (TreeWalk treeWalk = new TreeWalk(repository, objectAccess.getReader())) {
+            final int baseTree = treeWalk.addTree(base);
+            final int referenceTree = treeWalk.addTree(reference);
+            final ObjectId head = repository.resolve(Constants.HEAD + "^{tree}");
+            final int headTree = base.equals(head) ? baseTree : treeWalk.addTree(head);
+            final int indexTree = treeWalk.addTree(new DirCacheIterator(repository.readDirCache()));
+            final FileTreeIterator workingTreeIterator = new FileTreeIterator(repository);
+            final int workingTree = treeWalk.addTree(workingTreeIterator);
+            workingTreeIterator.setDirCacheIterator(treeWalk, indexTree);
+            treeWalk.setFilter(pathPatterns.getTreeFilter());
+            treeWalk.setRecursive(false);
+            while (treeWalk.next()) {
+                if (isUntracked(treeWalk, workingTree)) {
+                    continue;
+                }
+                if (hasMode(treeWalk, false)) {
+                    final boolean committedChange = differ(treeWalk, baseTree, referenceTree);
+                    final boolean stagedChange = isStaged(treeWalk, headTree, indexTree);
+                    final boolean unstagedChange = ! committedChange && ! stagedChange && isUnstaged(treeWalk, indexTree, workingTree);
+                    if (committedChange || stagedChange || unstagedChange) {
+                        final Path path = workTree.resolve(treeWalk.getPathString()).normalize();
+                        if (! configuration.excludePathRegex.test(path.toString())) {
+                            paths.add(path);
+                            committed += committedChange ? 1 : 0;
+                            staged += stagedChange ? 1 : 0;
+                            unstaged += unstagedChange ? 1 : 0;
+                        }
+                    }
+                }
+                if (hasMode(treeWalk, true)) {
+                    treeWalk.enterSubtree();
+                }
+            }
+        }
+        logger.debug("Single pass diff found " + committed + " committed, " + staged + " staged and " + unstaged + " unstaged changes.");
+        return paths;
+    }
+
+    private boolean isStaged(TreeWalk treeWalk, int headTree, int indexTree) {
+        final DirCacheIterator index = treeWalk.getTree(indexTree, DirCacheIterator.class);
+        final DirCacheEntry entry = index == null ? null : index.getDirCacheEntry();
+        return (entry != null && entry.getStage() != DirCacheEntry.STAGE_0) || differ(treeWalk, headTree, indexTree);
+    }
+
+    private boolean isUnstaged(TreeWalk treeWalk, int indexTree, int workingTree) throws IOException {
+        final DirCacheIterator index = treeWalk.getTree(indexTree, DirCacheIterator.class);
+        final DirCacheEntry entry = index == null ? null : index.getDirCacheEntry();
+        if (entry == null || entry.isAssumeValid()) {
+            return false;
+        }
+        final WorkingTreeIterator file = treeWalk.getTree(workingTree, WorkingTreeIterator.class);
+        return fileMode(treeWalk, workingTree) == FileMode.TYPE_MISSING || file.isModified(entry, false, treeWalk.getObjectReader());
+    }
+
+    private boolean isUntracked(TreeWalk treeWalk, int workingTree) {
+        for (int i = 0; i < treeWalk.getTreeCount(); i++) {
+            if (i != workingTree && treeWalk.getRawMode(i) != FileMode.TYPE_MISSING) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasMode(TreeWalk treeWalk, boolean tree) {
+        for (int i = 0; i < treeWalk.getTreeCount(); i++) {
+            final int mode = treeWalk.getRawMode(i);
+            if (mode != FileMode.TYPE_MISSING && FileMode.TREE.equals(mode) == tree) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean differ(TreeWalk treeWalk, int a, int b) {
+        final int mode = fileMode(treeWalk, a);
+        return mode != fileMode(treeWalk, b) || (mode != FileMode.TYPE_MISSING && ! treeWalk.idEqual(a, b));
+    }
+
+    private int fileMode(TreeWalk treeWalk, int tree) {
+        final int mode = treeWalk.getRawMode(tree);
+        return FileMode.TREE.equals(mode) ? FileMode.TYPE_MISSING : mode;
+    }
+}
@@ -0,0 +1,62 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Avoids fetching a branch whose remote head is already present locally. Remote heads are listed once per remote and
+ * session. When the advertised commit exists locally the tracking ref is fast forwarded to it without a fetch.
+ */
+@Singleton
+public class ConditionalFetch {
+
+    @Inject private Git git;
+    @Inject private Logger logger;
+
+    private final Map<String, Map<String, ObjectId>> remoteHeads = new HashMap<>();
+
+    /**
+     * @return true if the tracking ref now points to the remote head, false if a fetch is needed.
+     */
+    public synchronized boolean isCurrent(GitBackend backend, String remoteName, String remoteRef, String trackingRef) throws GitAPIException, IOException {
+        if (! remoteHeads.containsKey(remoteName)) {
+            logger.debug("Listing heads of remote " + remoteName);
+            remoteHeads.put(remoteName, backend.lsRemote(remoteName));
+        }
+        final ObjectId remoteHead = remoteHeads.get(remoteName).get(remoteRef);
+        final Repository repository = git.getRepository();
+        if (remoteHead == null || ! repository.hasObject(remoteHead)) {
+            return false;
+        }
+        final Ref local = repository.exactRef(trackingRef);
+        if (local != null && remoteHead.equals(local.getObjectId())) {
+            logger.info("Branch " + trackingRef + " is up to date with remote. Skipping fetch.");
+            return true;
+        }
+        final RefUpdate update = repository.updateRef(trackingRef);
+        update.setNewObjectId(remoteHead);
+        update.setRefLogMessage("gib: update from ls-remote", false);
+        final RefUpdate.Result result = update.update();
+        switch (result) {
+            case NEW:
+            case FAST_FORWARD:
+            case NO_CHANGE:
+                logger.info("Branch " + trackingRef + " updated to locally present remote head " + remoteHead.name() + ". Skipping fetch.");
+                return true;
+            default:
+                logger.debug("Updating " + trackingRef + " without fetch failed: " + result);
+                return false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Constant pool of a class file, read from a stream positioned right after the magic number. Keeps UTF-8 entries, the
+ * name indexes of class entries and a printable form of literal constants.
+ */
+class ConstantPool {
+
+    private final String[] utf8;
+    private final int[] classes;
+    private final String[] literals;
+
+    private ConstantPool(int count) {
+        this.utf8 = new String[count];
+        this.classes = new int[count];
+        this.literals = new String[count];
+    }
+
+    static ConstantPool read(DataInputStream in) throws IOException {
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        final ConstantPool pool = new ConstantPool(in.readUnsignedShort());
+        for (int i = 1; i < pool.utf8.length; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    pool.utf8[i] = in.readUTF();
+                    break;
+                case 7:
+                    pool.classes[i] = in.readUnsignedShort();
+                    break;
+                case 8:
+                    pool.literals[i] = "s" + in.readUnsignedShort();
+                    break;
+                case 16: case 19: case 20:
+                    in.readUnsignedShort();
+                    break;
+                case 15:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 3:
+                    pool.literals[i] = "I" + in.readInt();
+                    break;
+                case 4:
+                    pool.literals[i] = "F" + Float.intBitsToFloat(in.readInt());
+                    break;
+                case 9: case 10: case 11: case 12: case 17: case 18:
+                    in.readInt();
+                    break;
+                case 5:
+                    pool.literals[i++] = "J" + in.readLong();
+                    break;
+                case 6:
+                    pool.literals[i++] = "D" + Double.longBitsToDouble(in.readLong());
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + ".");
+            }
+        }
+        return pool;
+    }
+
+    int size() {
+        return utf8.length;
+    }
+
+    String getUtf8(int index) {
+        return utf8[index];
+    }
+
+    boolean isClass(int index) {
+        return classes[index] > 0;
+    }
+
+    String getClassName(int index) {
+        return index == 0 ? "" : utf8[classes[index]];
+    }
+
+    /**
+     * @return literal constant of given entry, strings resolved, or null if it is not a literal.
+     */
+    String getLiteral(int index) {
+        final String literal = literals[index];
+        return literal != null && literal.startsWith("s") ? "s" + utf8[Integer.parseInt(literal.substring(1))] : literal;
+    }
+}
@@ -0,0 +1,109 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Singleton;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reactor dependency graph built once per session. Projects are indexed by GAV and linked by their in-reactor
+ * dependencies (forward) and by their dependents including parent to child links (reverse), so that transitive
+ * closures are computed by a single breadth first search.
+ */
+@Singleton
+public class DependencyGraph {
+
+    @Inject private MavenSession mavenSession;
+    @Inject private Stages stages;
+
+    private Map<MavenProject, List<MavenProject>> dependencies;
+    private Map<MavenProject, List<MavenProject>> dependents;
+
+    /**
+     * @return given projects and all projects transitively depending on them or inheriting from them.
+     */
+    public Set<MavenProject> getAllDependents(Collection<MavenProject> projects) {
+        build();
+        return closure(projects, dependents);
+    }
+
+    /**
+     * @return projects directly depending on or inheriting from any of given projects, excluding given projects.
+     */
+    public Set<MavenProject> getDirectDependents(Collection<MavenProject> projects) {
+        build();
+        final Set<MavenProject> direct = new LinkedHashSet<>();
+        projects.forEach(p -> direct.addAll(dependents.getOrDefault(p, Collections.emptyList())));
+        direct.removeAll(projects);
+        return direct;
+    }
+
+    /**
+     * @return given projects and all their transitive in-reactor dependencies.
+     */
+    public Set<MavenProject> getAllDependencies(Collection<MavenProject> projects) {
+        build();
+        return closure(projects, dependencies);
+    }
+
+    private Set<MavenProject> closure(Collection<MavenProject> start, Map<MavenProject, List<MavenProject>> edges) {
+        final Set<MavenProject> visited = new LinkedHashSet<>(start);
+        final Deque<MavenProject> queue = new ArrayDeque<>(visited);
+        long visitedEdges = 0;
+        while (! queue.isEmpty()) {
+            for (MavenProject next: edges.getOrDefault(queue.poll(), Collections.emptyList())) {
+                visitedEdges++;
+                if (visited.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        stages.count("visited edges", visitedEdges);
+        return visited;
+    }
+
+    public synchronized void build() {
+        if (dependencies != null) {
+            return;
+        }
+        final List<MavenProject> projects = mavenSession.getProjects();
+        final Map<String, MavenProject> index = new HashMap<>();
+        projects.forEach(p -> index.putIfAbsent(gav(p.getGroupId(), p.getArtifactId(), p.getVersion()), p));
+        dependencies = new HashMap<>();
+        dependents = new HashMap<>();
+        for (MavenProject project: projects) {
+            for (Dependency dependency: project.getDependencies()) {
+                MavenProject upstream = index.get(gav(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion()));
+                if (upstream != null) {
+                    link(dependencies, project, upstream);
+                    link(dependents, upstream, project);
+                }
+            }
+            MavenProject parent = project.getParent();
+            if (parent != null && index.containsKey(gav(parent.getGroupId(), parent.getArtifactId(), parent.getVersion()))) {
+                link(dependents, index.get(gav(parent.getGroupId(), parent.getArtifactId(), parent.getVersion())), project);
+            }
+        }
+        stages.count("dependency edges", dependents.values().stream().mapToLong(List::size).sum());
+    }
+
+    private static void link(Map<MavenProject, List<MavenProject>> edges, MavenProject from, MavenProject to) {
+        edges.computeIfAbsent(from, p -> new ArrayList<>()).add(to);
+    }
+
+    private static String gav(String groupId, String artifactId, String version) {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+}
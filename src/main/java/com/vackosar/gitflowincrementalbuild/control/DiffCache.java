@@ -0,0 +1,116 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On disk cache of committed changed modules keyed by the compared tree ids, the path filters and the module layout.
+ * Each entry is a file listing changed module dirs relative to the work tree. Least recently used entries are evicted
+ * once the cache holds more than the configured number of entries or their sizes add up to more than the configured
+ * number of bytes. The most recent entry is always kept.
+ */
+@Singleton
+public class DiffCache {
+
+    private static final String DEFAULT_DIR = "gib/diff-cache";
+    private static final String ENTRY_SUFFIX = ".txt";
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+
+    public Set<MavenProject> get(Repository repository, AnyObjectId base, AnyObjectId reference, Map<String, MavenProject> moduleDirs, Loader loader) throws IOException {
+        final Path dir = configuration.diffCacheDir.orElse(repository.getDirectory().toPath().resolve(DEFAULT_DIR));
+        final Path entry = dir.resolve(key(base, reference, moduleDirs.keySet()) + ENTRY_SUFFIX);
+        if (Files.isRegularFile(entry)) {
+            logger.info("Using cached changed modules: " + entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return Files.readAllLines(entry, StandardCharsets.UTF_8).stream()
+                    .filter(moduleDirs::containsKey).map(moduleDirs::get)
+                    .collect(Collectors.toCollection(HashSet::new));
+        }
+        final Set<MavenProject> changed = loader.load();
+        final Set<String> lines = moduleDirs.entrySet().stream()
+                .filter(e -> changed.contains(e.getValue())).map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(TreeSet::new));
+        Files.createDirectories(dir);
+        final Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict(dir);
+        return changed;
+    }
+
+    private void evict(Path dir) throws IOException {
+        final List<Path> entries;
+        try (Stream<Path> files = Files.list(dir)) {
+            entries = files.filter(p -> p.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .sorted(Comparator.comparing(DiffCache::lastModified).reversed())
+                    .collect(Collectors.toList());
+        }
+        long bytes = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            final Path entry = entries.get(i);
+            bytes += size(entry);
+            if (i > 0 && (i >= configuration.diffCacheSize || bytes > configuration.diffCacheBytes)) {
+                logger.debug("Evicting cached changed modules: " + entry);
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    private String key(AnyObjectId base, AnyObjectId reference, Set<String> moduleDirs) {
+        final MessageDigest digest = Constants.newMessageDigest();
+        digest.update(Constants.encode("base " + base.name() + "\n"));
+        digest.update(Constants.encode("reference " + reference.name() + "\n"));
+        digest.update(Constants.encode("exclude " + Property.excludePathRegex.getValue() + "\n"));
+        digest.update(Constants.encode("include paths " + configuration.includePaths + "\n"));
+        digest.update(Constants.encode("exclude paths " + configuration.excludePaths + "\n"));
+        for (String moduleDir: new TreeSet<>(moduleDirs)) {
+            digest.update(Constants.encode("module " + moduleDir + "\n"));
+        }
+        return ObjectId.fromRaw(digest.digest()).name();
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public interface Loader {
+        Set<MavenProject> load() throws IOException;
+    }
+}
@@ -2,24 +2,27 @@ package com.vackosar.gitflowincrementalbuild.control;
 
 import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.logging.Logger;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.revwalk.filter.RevFilter;
-import org.eclipse.jgit.transport.RefSpec;
-import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 @Singleton
 public class DifferentFiles {
@@ -31,11 +34,191 @@ public class DifferentFiles {
     @Inject private Configuration configuration;
     @Inject private Logger logger;
     @Inject private MavenSession mavenSession;
+    @Inject private ModuleIndex moduleIndex;
+    @Inject private ModuleTreeDiff moduleTreeDiff;
+    @Inject private AggregatedModuleDiff aggregatedModuleDiff;
+    @Inject private DiffCache diffCache;
+    @Inject private MergeBaseIndex mergeBaseIndex;
+    @Inject private CombinedDiff combinedDiff;
+    @Inject private PathPatterns pathPatterns;
+    @Inject private ObjectAccess objectAccess;
+    @Inject private ConditionalFetch conditionalFetch;
+    @Inject private JGitBackend jGitBackend;
+    @Inject private NativeGitBackend nativeGitBackend;
+
+    @Inject private Stages stages;
+
+    private boolean baseIsWorkTree = true;
+    private GitBackend backend;
+    private CompletableFuture<Range> rangeStage;
+    private CompletableFuture<Set<Path>> statusStage;
+    private Set<Path> preparedPaths;
+
+    /**
+     * Runs the git stages that do not depend on the reactor ahead of time: fetch, ref resolution, merge base and,
+     * unless changed modules are resolved directly, the diff itself. Later calls reuse the results. Nothing is done if
+     * the base branch would have to be checked out, as that must not happen while project models are being read.
+     */
+    public void prepare() throws GitAPIException, IOException {
+        if (configuration.checkoutBaseBranch && ! isBaseCheckedOut()) {
+            logger.debug("Base branch is not checked out. Deferring git preparation until projects are read.");
+            return;
+        }
+        final Range range = Stages.join(startStages());
+        if (range != null && ! resolvesModules()) {
+            final Set<Path> paths = new HashSet<>();
+            visitChanges(range, path -> {
+                paths.add(path);
+                return true;
+            });
+            preparedPaths = paths;
+        }
+    }
+
+    /**
+     * @return whether changed modules are resolved directly by {@link #getChangedModules()} instead of from the
+     * changed files.
+     */
+    public boolean resolvesModules() {
+        return configuration.compareModuleTrees || configuration.aggregateModules || configuration.diffCache;
+    }
 
     public Set<Path> get() throws GitAPIException, IOException {
-        fetch();
-        checkout();
+        final Set<Path> paths = new HashSet<>();
+        get(path -> {
+            paths.add(path);
+            return true;
+        });
+        return paths;
+    }
+
+    /**
+     * Passes changed paths to the visitor as they are found. The rest of the diff is skipped once it returns false.
+     */
+    public void get(Predicate<Path> visitor) throws GitAPIException, IOException {
+        if (preparedPaths != null) {
+            visitAll(preparedPaths, visitor);
+            close();
+            return;
+        }
+        final Range range = Stages.join(startStages());
+        if (range == null) {
+            visitAll(getRootPaths(), visitor);
+            return;
+        }
+        visitChanges(range, visitor);
+        close();
+    }
 
+    private void visitChanges(Range range, Predicate<Path> visitor) throws GitAPIException, IOException {
+        final Path workTree = getWorkTree();
+        if (configuration.uncommited && baseIsWorkTree && configuration.singlePassDiff) {
+            visitAll(stages.run("combined diff", () -> {
+                final Set<Path> paths = combinedDiff.get(git.getRepository(), range.base, range.reference, workTree);
+                stages.count("changed files", paths.size());
+                return paths;
+            }, rangeStage), visitor);
+        } else if (stages.run("diff", () -> getDiff(range, workTree, visitor), rangeStage) && configuration.uncommited && baseIsWorkTree) {
+            visitAll(Stages.join(statusStage), visitor);
+        }
+    }
+
+    /**
+     * @return tree of the reference commit compared to, empty if everything is to be built.
+     */
+    public Optional<ObjectId> getReferenceTree() throws GitAPIException, IOException {
+        final Range range = Stages.join(startStages());
+        return range == null ? Optional.empty() : Optional.of(range.reference.copy());
+    }
+
+    /**
+     * Resolves changed modules directly, comparing module subtree ids or aggregating changed files per module when
+     * configured and reusing cached results of previous runs when enabled. Uncommitted changes are never cached.
+     */
+    public Set<MavenProject> getChangedModules() throws GitAPIException, IOException {
+        final Range range = Stages.join(startStages());
+        if (range == null) {
+            return new HashSet<>(moduleIndex.findProjects(getRootPaths()).values());
+        }
+        final Path workTree = getWorkTree();
+        final Map<String, MavenProject> moduleDirs = moduleIndex.getRelativeModuleDirs(workTree.toRealPath());
+        final Set<MavenProject> changed = stages.run("module diff", () -> {
+            if (configuration.diffCache) {
+                return diffCache.get(git.getRepository(), range.base, range.reference, moduleDirs, () -> getCommittedModules(range, moduleDirs, workTree));
+            } else {
+                return getCommittedModules(range, moduleDirs, workTree);
+            }
+        }, rangeStage);
+        stages.count("committed changed modules", changed.size());
+        if (configuration.uncommited && baseIsWorkTree && changed.size() < moduleIndex.getModuleCount()) {
+            changed.addAll(moduleIndex.findProjects(Stages.join(statusStage)).values());
+        }
+        close();
+        return changed;
+    }
+
+    private Set<MavenProject> getCommittedModules(Range range, Map<String, MavenProject> moduleDirs, Path workTree) throws IOException {
+        if (configuration.compareModuleTrees) {
+            return moduleTreeDiff.get(git.getRepository(), range.base, range.reference, moduleDirs, workTree);
+        } else if (configuration.aggregateModules) {
+            return aggregatedModuleDiff.get(git.getRepository(), range.base, range.reference, moduleDirs, workTree);
+        } else {
+            final Set<MavenProject> changed = new HashSet<>();
+            getDiff(range, workTree, path -> {
+                final MavenProject project = moduleIndex.findProject(path);
+                if (project != null) {
+                    changed.add(project);
+                }
+                return changed.size() < moduleIndex.getModuleCount();
+            });
+            return changed;
+        }
+    }
+
+    /**
+     * Starts fetches, checkout, ref resolution and merge base search as stages unless already started. Fetches run
+     * concurrently, status of uncommitted changes runs concurrently with everything after the checkout.
+     *
+     * @return future of the compared trees, or null if everything is to be built.
+     */
+    private synchronized CompletableFuture<Range> startStages() {
+        if (rangeStage != null) {
+            return rangeStage;
+        }
+        final CompletableFuture<Void> fetchReference = configuration.fetchReferenceBranch
+                ? stages.submit("fetch reference", () -> fetch(configuration.referenceBranch))
+                : CompletableFuture.completedFuture(null);
+        final CompletableFuture<Void> fetchBase = configuration.fetchBaseBranch
+                && ! (configuration.fetchReferenceBranch && configuration.baseBranch.equals(configuration.referenceBranch))
+                ? stages.submit("fetch base", () -> fetch(configuration.baseBranch))
+                : CompletableFuture.completedFuture(null);
+        final CompletableFuture<Void> checkout = stages.submit("checkout", () -> {
+            checkout();
+            return null;
+        }, fetchBase);
+        final String[] commits = getCommits();
+        if (commits == null) {
+            rangeStage = CompletableFuture.allOf(fetchReference, checkout).thenApply(v -> null);
+            return rangeStage;
+        }
+        if (configuration.uncommited && (! configuration.singlePassDiff || resolvesModules())) {
+            statusStage = stages.submit("status", () -> baseIsWorkTree ? getUncommitedChanges(getWorkTree()) : new HashSet<>(), checkout);
+        }
+        final String baseCommit = commits[0];
+        final String referenceCommit = commits[1];
+        final CompletableFuture<ObjectId> base = stages.submit("resolve base",
+                () -> baseCommit.isEmpty() ? getBranchId(configuration.baseBranch) : getBackend().resolve(baseCommit), checkout);
+        final CompletableFuture<ObjectId> reference = stages.submit("resolve reference",
+                () -> referenceCommit.isEmpty() ? getBranchId(configuration.referenceBranch) : getBackend().resolve(referenceCommit),
+                checkout, fetchReference);
+        rangeStage = stages.submit("commit range", () -> getRange(base.join(), baseCommit, reference.join(), referenceCommit), base, reference);
+        return rangeStage;
+    }
+
+    /**
+     * @return base and reference commit, empty for branch heads, or null if everything is to be built.
+     */
+    private String[] getCommits() {
         String baseCommit;
         String referenceCommit;
 
@@ -48,9 +231,7 @@ public class DifferentFiles {
             // If the value is empty, that means no comparison (from Travis), suggesting first build
             // As such, simulate building everything by returning that the root path changed
             if (configuration.commitRange.equals("")) {
-                Set<Path> rootPaths = new HashSet<Path>();
-                rootPaths.add(mavenSession.getTopLevelProject().getBasedir().toPath());
-                return rootPaths;
+                return null;
             }
             else {
                 String[] parts = configuration.commitRange.split("\\.\\.\\.");
@@ -59,71 +240,100 @@ public class DifferentFiles {
             }
         }
 
-        return get(baseCommit, referenceCommit);
+        return new String[] {baseCommit, referenceCommit};
     }
 
-    private Set<Path> get(String baseCommit, String referenceCommit) throws GitAPIException, IOException {
+    private Range getRange(ObjectId baseId, String baseCommit, ObjectId referenceId, String referenceCommit) throws IOException {
         // Use a commit SHA to be base if it is set; otherwise do default branch base
-        RevCommit base;
+        RevCommit base = objectAccess.getWalk().parseCommit(baseId);
         if (!baseCommit.equals("")) {
-            RevWalk walk = new RevWalk(git.getRepository());
-            base = walk.parseCommit(git.getRepository().resolve(baseCommit));
-            walk.close();
             logger.info("Base commit is: " + base.getId());
         }
         else {
-            base = getBranchCommit(configuration.baseBranch);
+            logger.info("Reference commit of branch " + configuration.baseBranch + " is commit of id: " + base.getId());
         }
-        final TreeWalk treeWalk = new TreeWalk(git.getRepository());
-        treeWalk.addTree(base.getTree());
         // Use a commit SHA to be reference if it is set; otherwise do default branch reference
+        RevCommit reference = objectAccess.getWalk().parseCommit(referenceId);
         if (!referenceCommit.equals("")) {
-            RevWalk walk = new RevWalk(git.getRepository());
-            RevCommit refCommit = walk.parseCommit(git.getRepository().resolve(referenceCommit));
-            walk.close();
-            logger.info("Reference commit is: " + refCommit.getId());
-            treeWalk.addTree(refCommit.getTree());
+            logger.info("Reference commit is: " + reference.getId());
         }
         else {
-            treeWalk.addTree(resolveReference(base).getTree());
+            logger.info("Reference commit of branch " + configuration.referenceBranch + " is commit of id: " + reference.getId());
+            if (configuration.compareToMergeBase) {
+                reference = getMergeBase(base, reference);
+            }
         }
-        treeWalk.setFilter(TreeFilter.ANY_DIFF);
-        treeWalk.setRecursive(true);
-        final Path workTree = git.getRepository().getWorkTree().toPath().normalize().toAbsolutePath();
-        final Set<Path> paths = getDiff(treeWalk, workTree);
-        if (configuration.uncommited) {
-            paths.addAll(getUncommitedChanges(workTree));
+        return new Range(base.getTree(), reference.getTree());
+    }
+
+    private Set<Path> getRootPaths() {
+        Set<Path> rootPaths = new HashSet<Path>();
+        rootPaths.add(mavenSession.getTopLevelProject().getBasedir().toPath());
+        return rootPaths;
+    }
+
+    private Path getWorkTree() {
+        return git.getRepository().getWorkTree().toPath().normalize().toAbsolutePath();
+    }
+
+    public void close() {
+        if (statusStage != null) {
+            statusStage.handle((paths, e) -> paths).join();
         }
-        treeWalk.close();
+        objectAccess.close();
         git.getRepository().close();
         git.close();
-        return paths;
     }
 
     private void checkout() throws IOException, GitAPIException {
-        if (! (HEAD.equals(configuration.baseBranch) || configuration.baseBranch.startsWith("worktrees/")) && ! git.getRepository().getFullBranch().equals(configuration.baseBranch)) {
-            logger.info("Checking out base branch " + configuration.baseBranch + "...");
-            git.checkout().setName(configuration.baseBranch).call();
+        if (! isBaseCheckedOut()) {
+            if (configuration.checkoutBaseBranch) {
+                logger.info("Checking out base branch " + configuration.baseBranch + "...");
+                git.checkout().setName(configuration.baseBranch).call();
+            } else {
+                logger.info("Comparing base branch " + configuration.baseBranch + " without checkout. Uncommitted changes are ignored.");
+                baseIsWorkTree = false;
+            }
         }
     }
 
-    private void fetch() throws GitAPIException {
-        if (configuration.fetchReferenceBranch) {
-            fetch(configuration.referenceBranch);
-        }
-        if (configuration.fetchBaseBranch) {
-            fetch(configuration.baseBranch);
+    private boolean isBaseCheckedOut() throws IOException {
+        return HEAD.equals(configuration.baseBranch) || configuration.baseBranch.startsWith("worktrees/")
+                || git.getRepository().getFullBranch().equals(configuration.baseBranch);
+    }
+
+    private synchronized GitBackend getBackend() {
+        if (backend == null) {
+            if ("native".equals(configuration.gitBackend)) {
+                if (nativeGitBackend.isAvailable()) {
+                    backend = nativeGitBackend;
+                } else {
+                    logger.warn("Git executable '" + configuration.gitExecutable + "' not usable. Falling back to JGit.");
+                    backend = jGitBackend;
+                }
+            } else if ("jgit".equals(configuration.gitBackend)) {
+                backend = jGitBackend;
+            } else {
+                throw new IllegalArgumentException("Unknown git backend '" + configuration.gitBackend + "'. Supported are jgit and native.");
+            }
         }
+        return backend;
     }
 
-    private void fetch(String branchName) throws GitAPIException {
+    private Void fetch(String branchName) throws GitAPIException, IOException {
         logger.info("Fetching branch " + branchName);
         if (!branchName.startsWith(REFS_REMOTES)) {
             throw new IllegalArgumentException("Branch name '" + branchName + "' is not tracking branch name since it does not start " + REFS_REMOTES);
         }
         String remoteName = extractRemoteName(branchName);
         String shortName = extractShortName(remoteName, branchName);
-        git.fetch().setRemote(remoteName).setRefSpecs(new RefSpec(REFS_HEADS + shortName + ":" + branchName)).call();
+        if (configuration.conditionalFetch && conditionalFetch.isCurrent(getBackend(), remoteName, REFS_HEADS + shortName, branchName)) {
+            stages.count("skipped fetches", 1);
+        } else {
+            getBackend().fetch(remoteName, REFS_HEADS + shortName + ":" + branchName, ! configuration.conditionalFetch);
+            stages.count("fetches", 1);
+        }
+        return null;
     }
 
     private String extractRemoteName(String branchName) {
@@ -135,51 +345,78 @@ public class DifferentFiles {
     }
 
     private RevCommit getMergeBase(RevCommit baseCommit, RevCommit referenceHeadCommit) throws IOException {
-        RevWalk walk = new RevWalk(git.getRepository());
-        walk.setRevFilter(RevFilter.MERGE_BASE);
-        walk.markStart(walk.lookupCommit(baseCommit));
-        walk.markStart(walk.lookupCommit(referenceHeadCommit));
-        RevCommit commit = walk.next();
-        walk.close();
+        final RevWalk walk = objectAccess.getWalk();
+        RevCommit commit;
+        if (configuration.mergeBaseIndex) {
+            commit = mergeBaseIndex.getMergeBase(walk, git.getRepository(), baseCommit, referenceHeadCommit);
+        } else {
+            commit = walk.parseCommit(getBackend().getMergeBase(baseCommit, referenceHeadCommit));
+        }
         logger.info("Using merge base of id: " + commit.getId());
         return commit;
     }
 
-    private Set<Path> getDiff(TreeWalk treeWalk, Path gitDir) throws IOException {
-        final Set<Path> paths = new HashSet<>();
-        while (treeWalk.next()) {
-            Path path = gitDir.resolve(treeWalk.getPathString()).normalize();
-            if (! configuration.excludePathRegex.test(path.toString())) {
-                paths.add(path);
+    /**
+     * @return false if the visitor stopped the diff.
+     */
+    private boolean getDiff(Range range, Path gitDir, Predicate<Path> visitor) throws IOException {
+        final AtomicBoolean complete = new AtomicBoolean(true);
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong excluded = new AtomicLong();
+        getBackend().diff(range.base, range.reference, pathString -> {
+            files.incrementAndGet();
+            Path path = gitDir.resolve(pathString).normalize();
+            if (configuration.excludePathRegex.test(path.toString())) {
+                excluded.incrementAndGet();
+                return true;
+            }
+            if (visitor.test(path)) {
+                return true;
+            }
+            logger.debug("Skipping rest of diff after: " + path);
+            complete.set(false);
+            return false;
+        });
+        stages.count("changed files", files.get());
+        stages.count("excluded files", excluded.get());
+        return complete.get();
+    }
+
+    private static void visitAll(Set<Path> paths, Predicate<Path> visitor) {
+        for (Path path: paths) {
+            if (! visitor.test(path)) {
+                return;
             }
         }
-        return paths;
     }
 
-    private RevCommit getBranchCommit(String branchName) throws IOException {
-        ObjectId objectId = git.getRepository().resolve(branchName);
+    private ObjectId getBranchId(String branchName) throws IOException {
+        ObjectId objectId = getBackend().resolve(branchName);
 
         if (objectId == null) {
             throw new IllegalArgumentException("Git branch of name '" + branchName + "' not found.");
         }
-        final RevWalk walk = new RevWalk(git.getRepository());
-        RevCommit commit = walk.parseCommit(objectId);
-        walk.close();
-        logger.info("Reference commit of branch " + branchName + " is commit of id: " + commit.getId());
-        return commit;
+        return objectId;
     }
 
-    private Set<Path> getUncommitedChanges(Path gitDir) throws GitAPIException {
-        return git.status().call().getUncommittedChanges().stream()
-                .map(gitDir::resolve).map(Path::normalize).collect(Collectors.toSet());
+    private Set<Path> getUncommitedChanges(Path gitDir) throws GitAPIException, IOException {
+        final Set<Path> paths = new HashSet<>();
+        getBackend().status(path -> {
+            if (pathPatterns.accepts(path)) {
+                paths.add(gitDir.resolve(path).normalize());
+            }
+        });
+        stages.count("uncommitted files", paths.size());
+        return paths;
     }
 
-    private RevCommit resolveReference(RevCommit base) throws IOException {
-        RevCommit refHead = getBranchCommit(configuration.referenceBranch);
-        if (configuration.compareToMergeBase) {
-            return getMergeBase(base, refHead);
-        } else {
-            return refHead;
+    private static class Range {
+        private final RevTree base;
+        private final RevTree reference;
+
+        private Range(RevTree base, RevTree reference) {
+            this.base = base;
+            this.reference = reference;
         }
     }
 
@@ -0,0 +1,47 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Git operations used to find changed files. Paths are '/' separated and relative to the work tree.
+ */
+public interface GitBackend {
+
+    /**
+     * @param followTags whether tags pointing into fetched history are fetched too.
+     */
+    void fetch(String remoteName, String refSpec, boolean followTags) throws GitAPIException, IOException;
+
+    /**
+     * @return ids of the branch heads advertised by the remote keyed by full ref name.
+     */
+    Map<String, ObjectId> lsRemote(String remoteName) throws GitAPIException, IOException;
+
+    /**
+     * @return id the revision resolves to or null if it does not exist.
+     */
+    ObjectId resolve(String revision) throws IOException;
+
+    /**
+     * @return best common ancestor of given commits or null if they have none.
+     */
+    ObjectId getMergeBase(AnyObjectId base, AnyObjectId reference) throws IOException;
+
+    /**
+     * Passes paths of files differing between given trees to the visitor as they are found. The rest of the diff is
+     * skipped once the visitor returns false.
+     */
+    void diff(AnyObjectId baseTree, AnyObjectId referenceTree, Predicate<String> paths) throws IOException;
+
+    /**
+     * Passes paths of tracked files with staged or unstaged changes to the consumer. Untracked files are not listed.
+     */
+    void status(Consumer<String> paths) throws GitAPIException, IOException;
+}
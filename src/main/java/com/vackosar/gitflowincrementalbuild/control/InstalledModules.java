@@ -0,0 +1,151 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Artifacts of modules in the local repository. Installed modules are marked with their source key from
+ * {@link ModuleKeys} and the size and modification time of the installed artifact in a file next to the artifacts, so
+ * that an installed artifact built from other sources, or installed again without the key being recorded, is recognized
+ * as stale. Artifacts installed without a matching key are stale when sources are checked.
+ */
+@Singleton
+public class InstalledModules {
+
+    private static final String FINGERPRINT = "gib-source-key.txt";
+    private static final List<String> INSTALLING_PHASES = Arrays.asList("install", "deploy");
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private MavenSession mavenSession;
+    @Inject private ModuleKeys moduleKeys;
+
+    /**
+     * @return those of given projects not installed or, if installed upstream modules are checked, built from other
+     * sources.
+     */
+    public Set<MavenProject> getUnavailable(Collection<MavenProject> projects) throws GitAPIException, IOException {
+        if (configuration.skipInstalledUpstream) {
+            moduleKeys.compute(projects);
+        }
+        final Set<MavenProject> unavailable = new LinkedHashSet<>();
+        for (MavenProject project: projects) {
+            if (! isInstalled(project)) {
+                logger.debug(project.getArtifactId() + ": Not installed.");
+                unavailable.add(project);
+            } else if (configuration.skipInstalledUpstream && ! isUpToDate(project)) {
+                logger.debug(project.getArtifactId() + ": Installed from other sources.");
+                unavailable.add(project);
+            }
+        }
+        return unavailable;
+    }
+
+    private boolean isInstalled(MavenProject project) {
+        return Files.isRegularFile(getArtifact(project));
+    }
+
+    private boolean isUpToDate(MavenProject project) throws IOException {
+        final Optional<String> key = moduleKeys.get(project);
+        final Path fingerprint = getDir(project).resolve(FINGERPRINT);
+        return key.isPresent() && Files.isRegularFile(fingerprint)
+                && getFingerprint(key.get(), project).equals(new String(Files.readAllBytes(fingerprint), StandardCharsets.UTF_8).trim());
+    }
+
+    /**
+     * Marks the installed artifacts of given project with its source key, if it has one. Otherwise an earlier mark
+     * is removed, as it does not describe the installed artifacts any more.
+     *
+     * @return whether the key was recorded.
+     */
+    public boolean record(MavenProject project) throws IOException {
+        final Optional<String> key = moduleKeys.get(project);
+        if (! key.isPresent() || ! isInstalled(project)) {
+            invalidate(project);
+            return false;
+        }
+        final Path dir = getDir(project);
+        final Path tmp = Files.createTempFile(dir, FINGERPRINT, ".tmp");
+        Files.write(tmp, getFingerprint(key.get(), project).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, dir.resolve(FINGERPRINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private void invalidate(MavenProject project) throws IOException {
+        if (Files.deleteIfExists(getDir(project).resolve(FINGERPRINT))) {
+            logger.debug(project.getArtifactId() + ": Source key of installed artifacts removed.");
+        }
+    }
+
+    /**
+     * @return source key followed by size and modification time of the installed artifact, which change whenever the
+     * artifact is installed again.
+     */
+    private String getFingerprint(String key, MavenProject project) throws IOException {
+        final Path artifact = getArtifact(project);
+        return key + "\n" + Files.size(artifact) + ":" + Files.getLastModifiedTime(artifact).toMillis();
+    }
+
+    private Path getArtifact(MavenProject project) {
+        return getDir(project).resolve(getFileName(project.getArtifact(), project));
+    }
+
+    /**
+     * Records source keys of the projects installed successfully in given session. Marks of projects that failed are
+     * removed, as their artifacts may have been installed partially.
+     */
+    public void record(MavenSession session) throws GitAPIException, IOException {
+        if (session.getGoals().stream().noneMatch(INSTALLING_PHASES::contains)) {
+            return;
+        }
+        final Collection<MavenProject> projects = session.getProjects();
+        moduleKeys.compute(projects);
+        int recorded = 0;
+        for (MavenProject project: projects) {
+            if (! (session.getResult().getBuildSummary(project) instanceof BuildSuccess)) {
+                invalidate(project);
+            } else if (record(project)) {
+                recorded++;
+            }
+        }
+        logger.debug("Recorded source keys of " + recorded + " installed modules.");
+    }
+
+    /**
+     * @return dir of given project version in the local repository.
+     */
+    public Path getDir(MavenProject project) {
+        return Paths.get(mavenSession.getLocalRepository().getBasedir())
+                .resolve(project.getGroupId().replace('.', '/')).resolve(project.getArtifactId()).resolve(project.getVersion());
+    }
+
+    /**
+     * @return name of given artifact of given project in the local repository.
+     */
+    public static String getFileName(Artifact artifact, MavenProject project) {
+        final Optional<Artifact> known = Optional.ofNullable(artifact);
+        final String classifier = known.map(Artifact::getClassifier).filter(c -> ! c.isEmpty()).map(c -> "-" + c).orElse("");
+        final String extension = known.map(a -> a.getArtifactHandler().getExtension()).orElse(project.getPackaging());
+        return project.getArtifactId() + "-" + project.getVersion() + classifier + "." + extension;
+    }
+}
@@ -0,0 +1,90 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+@Singleton
+public class JGitBackend implements GitBackend {
+
+    @Inject private Git git;
+    @Inject private Configuration configuration;
+    @Inject private ParallelTreeDiff parallelTreeDiff;
+    @Inject private PathPatterns pathPatterns;
+    @Inject private ObjectAccess objectAccess;
+
+    @Override
+    public void fetch(String remoteName, String refSpec, boolean followTags) throws GitAPIException {
+        git.fetch().setRemote(remoteName).setRefSpecs(new RefSpec(refSpec))
+                .setTagOpt(followTags ? TagOpt.AUTO_FOLLOW : TagOpt.NO_TAGS).call();
+    }
+
+    @Override
+    public Map<String, ObjectId> lsRemote(String remoteName) throws GitAPIException {
+        return git.lsRemote().setRemote(remoteName).setHeads(true).call().stream()
+                .collect(Collectors.toMap(Ref::getName, Ref::getObjectId));
+    }
+
+    @Override
+    public ObjectId resolve(String revision) throws IOException {
+        return git.getRepository().resolve(revision);
+    }
+
+    @Override
+    public ObjectId getMergeBase(AnyObjectId base, AnyObjectId reference) throws IOException {
+        final RevWalk walk = objectAccess.getWalk();
+        walk.reset();
+        try {
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(base));
+            walk.markStart(walk.parseCommit(reference));
+            final RevCommit mergeBase = walk.next();
+            return mergeBase == null ? null : mergeBase.copy();
+        } finally {
+            walk.reset();
+            walk.setRevFilter(RevFilter.ALL);
+        }
+    }
+
+    @Override
+    public void diff(AnyObjectId baseTree, AnyObjectId referenceTree, Predicate<String> paths) throws IOException {
+        if (configuration.diffParallelism > 1) {
+            parallelTreeDiff.get(git.getRepository(), baseTree, referenceTree, pathPatterns.and(TreeFilter.ANY_DIFF), configuration.diffParallelism, paths);
+            return;
+        }
+        try (TreeWalk treeWalk = new TreeWalk(git.getRepository(), objectAccess.getReader())) {
+            treeWalk.addTree(baseTree);
+            treeWalk.addTree(referenceTree);
+            treeWalk.setFilter(pathPatterns.and(TreeFilter.ANY_DIFF));
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                if (! paths.test(treeWalk.getPathString())) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void status(Consumer<String> paths) throws GitAPIException {
+        git.status().call().getUncommittedChanges().forEach(paths);
+    }
+}
@@ -0,0 +1,277 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Persistent merge base index under the git dir. Merge bases of recently compared tip pairs are looked up directly.
+ * Otherwise the merge base is found by painting both tips down in generation number order, which stops at the first
+ * commit reachable from both. Generation numbers depend on the whole history below a commit, so the first run walks all
+ * history reachable from both tips to compute them. They are kept in a file sorted by commit id so that later runs
+ * only walk commits added since the previous build to extend it.
+ */
+@Singleton
+public class MergeBaseIndex {
+
+    private static final String DIR = "gib/merge-base-index";
+    private static final String PAIRS = "merge-bases";
+    private static final String GENERATIONS = "generations";
+    private static final int MAX_PAIRS = 64;
+
+    @Inject private Logger logger;
+
+    public RevCommit getMergeBase(RevWalk walk, Repository repository, RevCommit base, RevCommit reference) throws IOException {
+        final Path dir = repository.getDirectory().toPath().resolve(DIR);
+        final List<String> pairs = readPairs(dir.resolve(PAIRS));
+        final String key = base.name() + " " + reference.name() + " ";
+        for (String pair: pairs) {
+            if (pair.startsWith(key) && repository.hasObject(ObjectId.fromString(pair.substring(key.length())))) {
+                logger.debug("Merge base found in index: " + pair);
+                return walk.parseCommit(ObjectId.fromString(pair.substring(key.length())));
+            }
+        }
+        final RevCommit mergeBase;
+        try (Generations generations = new Generations(dir.resolve(GENERATIONS))) {
+            mergeBase = paint(walk, generations, walk.parseCommit(base), walk.parseCommit(reference));
+            Files.createDirectories(dir);
+            generations.save();
+        }
+        if (mergeBase != null) {
+            pairs.removeIf(p -> p.startsWith(key));
+            pairs.add(0, key + mergeBase.name());
+            write(dir.resolve(PAIRS), pairs.subList(0, Math.min(MAX_PAIRS, pairs.size())));
+        }
+        return mergeBase;
+    }
+
+    private RevCommit paint(RevWalk walk, Generations generations, RevCommit base, RevCommit reference) throws IOException {
+        final RevFlag fromBase = walk.newFlag("fromBase");
+        final RevFlag fromReference = walk.newFlag("fromReference");
+        final RevFlag queued = walk.newFlag("queued");
+        try {
+            final PriorityQueue<RevCommit> queue = new PriorityQueue<>(
+                    Comparator.comparing((RevCommit c) -> generations.get(walk, c)).reversed());
+            base.add(fromBase);
+            reference.add(fromReference);
+            for (RevCommit tip: new RevCommit[] {base, reference}) {
+                if (! tip.has(queued)) {
+                    tip.add(queued);
+                    generations.get(walk, tip);
+                    queue.add(tip);
+                }
+            }
+            int walked = 0;
+            while (! queue.isEmpty()) {
+                final RevCommit commit = queue.poll();
+                walked++;
+                if (commit.has(fromBase) && commit.has(fromReference)) {
+                    logger.debug("Merge base found after walking " + walked + " commits.");
+                    return commit;
+                }
+                walk.parseHeaders(commit);
+                for (RevCommit parent: commit.getParents()) {
+                    if (commit.has(fromBase)) {
+                        parent.add(fromBase);
+                    }
+                    if (commit.has(fromReference)) {
+                        parent.add(fromReference);
+                    }
+                    if (! parent.has(queued)) {
+                        parent.add(queued);
+                        generations.get(walk, parent);
+                        queue.add(parent);
+                    }
+                }
+            }
+            return null;
+        } finally {
+            walk.disposeFlag(fromBase);
+            walk.disposeFlag(fromReference);
+            walk.disposeFlag(queued);
+        }
+    }
+
+    private List<String> readPairs(Path file) throws IOException {
+        return Files.isRegularFile(file) ? new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8)) : new ArrayList<>();
+    }
+
+    private static void write(Path file, List<String> lines) throws IOException {
+        final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Generation numbers backed by a file of fixed width records (commit id, generation) sorted by commit id. Records
+     * are binary searched on demand and newly computed ones are merged into the file on save.
+     */
+    private static class Generations implements AutoCloseable {
+
+        private static final int RECORD = Constants.OBJECT_ID_LENGTH + 4;
+
+        private final Path file;
+        private final Map<AnyObjectId, Integer> known = new HashMap<>();
+        private final TreeMap<ObjectId, Integer> added = new TreeMap<>();
+        private RandomAccessFile records;
+
+        private Generations(Path file) {
+            this.file = file;
+        }
+
+        private int get(RevWalk walk, RevCommit commit) {
+            try {
+                return compute(walk, commit);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private int compute(RevWalk walk, RevCommit commit) throws IOException {
+            Integer generation = lookup(commit);
+            if (generation != null) {
+                return generation;
+            }
+            final Deque<RevCommit> stack = new ArrayDeque<>();
+            stack.push(commit);
+            while (! stack.isEmpty()) {
+                final RevCommit next = stack.peek();
+                if (lookup(next) != null) {
+                    stack.pop();
+                    continue;
+                }
+                walk.parseHeaders(next);
+                int max = 0;
+                boolean ready = true;
+                for (RevCommit parent: next.getParents()) {
+                    final Integer parentGeneration = lookup(parent);
+                    if (parentGeneration == null) {
+                        ready = false;
+                        stack.push(parent);
+                    } else {
+                        max = Math.max(max, parentGeneration);
+                    }
+                }
+                if (ready) {
+                    known.put(next, max + 1);
+                    added.put(next.copy(), max + 1);
+                    stack.pop();
+                }
+            }
+            return known.get(commit);
+        }
+
+        private Integer lookup(RevCommit commit) throws IOException {
+            Integer generation = known.get(commit);
+            if (generation == null && (records != null || Files.isRegularFile(file))) {
+                generation = search(commit);
+                if (generation != null) {
+                    known.put(commit, generation);
+                }
+            }
+            return generation;
+        }
+
+        private Integer search(AnyObjectId id) throws IOException {
+            if (records == null) {
+                records = new RandomAccessFile(file.toFile(), "r");
+            }
+            final byte[] record = new byte[RECORD];
+            long low = 0;
+            long high = records.length() / RECORD - 1;
+            while (low <= high) {
+                final long mid = (low + high) >>> 1;
+                records.seek(mid * RECORD);
+                records.readFully(record);
+                final int compare = id.compareTo(record, 0);
+                if (compare == 0) {
+                    return ((record[20] & 0xff) << 24) | ((record[21] & 0xff) << 16) | ((record[22] & 0xff) << 8) | (record[23] & 0xff);
+                } else if (compare > 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return null;
+        }
+
+        private void save() throws IOException {
+            close();
+            if (added.isEmpty()) {
+                return;
+            }
+            final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+                if (Files.isRegularFile(file)) {
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                        while (read(in, id)) {
+                            final int generation = in.readInt();
+                            final ObjectId existing = ObjectId.fromRaw(id);
+                            while (! added.isEmpty() && added.firstKey().compareTo(existing) < 0) {
+                                writeRecord(out, added.pollFirstEntry());
+                            }
+                            added.remove(existing);
+                            out.write(id);
+                            out.writeInt(generation);
+                        }
+                    }
+                }
+                while (! added.isEmpty()) {
+                    writeRecord(out, added.pollFirstEntry());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (records != null) {
+                records.close();
+                records = null;
+            }
+        }
+
+        private static boolean read(DataInputStream in, byte[] id) throws IOException {
+            try {
+                in.readFully(id);
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        private static void writeRecord(DataOutputStream out, Map.Entry<ObjectId, Integer> entry) throws IOException {
+            entry.getKey().copyRawTo(out);
+            out.writeInt(entry.getValue());
+        }
+    }
+}
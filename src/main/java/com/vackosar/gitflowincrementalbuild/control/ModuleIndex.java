@@ -0,0 +1,117 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Singleton;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Path segment trie over canonical module base dirs built once per session. Resolves a path to its deepest owning
+ * module in O(path depth) without touching the file system.
+ */
+@Singleton
+public class ModuleIndex {
+
+    @Inject private MavenSession mavenSession;
+    @Inject private Modules modules;
+    @Inject private Stages stages;
+
+    private Map<Path, MavenProject> pathMap;
+    private Map<MavenProject, Path> baseDirs;
+    private Node root;
+
+    /**
+     * @return changed paths mapped to their owning project. Paths outside of any project are omitted.
+     */
+    public Map<Path, MavenProject> findProjects(Collection<Path> paths) {
+        final Map<Path, MavenProject> result = new LinkedHashMap<>();
+        for (Path path: paths) {
+            MavenProject project = findProject(path);
+            if (project != null) {
+                result.put(path, project);
+            }
+        }
+        return result;
+    }
+
+    public MavenProject findProject(Path path) {
+        Node node = getRoot().children.get(rootKey(path));
+        MavenProject project = null;
+        for (int i = 0; node != null; i++) {
+            if (node.project != null) {
+                project = node.project;
+            }
+            node = i < path.getNameCount() ? node.children.get(path.getName(i).toString()) : null;
+        }
+        return project;
+    }
+
+    /**
+     * @return projects keyed by their '/' separated base dir relative to given canonical dir. Projects outside of it
+     * are omitted and a project located directly in it is keyed by an empty string.
+     */
+    public Map<String, MavenProject> getRelativeModuleDirs(Path baseDir) {
+        getRoot();
+        final Map<String, MavenProject> result = new HashMap<>();
+        pathMap.forEach((path, project) -> {
+            if (path.startsWith(baseDir)) {
+                result.put(baseDir.relativize(path).toString().replace(File.separatorChar, '/'), project);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return canonical base dir of given project of the session.
+     */
+    public Path getBaseDir(MavenProject project) {
+        getRoot();
+        return baseDirs.get(project);
+    }
+
+    public int getModuleCount() {
+        getRoot();
+        return pathMap.size();
+    }
+
+    private synchronized Node getRoot() {
+        if (root == null) {
+            root = new Node();
+            pathMap = modules.createPathMap(mavenSession);
+            baseDirs = new IdentityHashMap<>();
+            pathMap.forEach((path, project) -> baseDirs.put(project, path));
+            pathMap.forEach(this::add);
+            stages.count("modules", pathMap.size());
+        }
+        return root;
+    }
+
+    private void add(Path path, MavenProject project) {
+        Node node = root.child(rootKey(path));
+        for (Path name: path) {
+            node = node.child(name.toString());
+        }
+        node.project = project;
+    }
+
+    private static String rootKey(Path path) {
+        return String.valueOf(path.getRoot());
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private MavenProject project;
+
+        private Node child(String name) {
+            return children.computeIfAbsent(name, n -> new Node());
+        }
+    }
+}
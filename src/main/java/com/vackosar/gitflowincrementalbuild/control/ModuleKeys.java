@@ -0,0 +1,113 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Source keys of modules hashing the committed subtree id and effective POM of a module together with those of all
+ * its in-reactor dependencies. Modules with uncommitted or untracked changes in themselves or their dependencies have
+ * no key. Keys are computed once per session.
+ */
+@Singleton
+public class ModuleKeys {
+
+    @Inject private Logger logger;
+    @Inject private Git git;
+    @Inject private DependencyGraph dependencyGraph;
+    @Inject private ModuleIndex moduleIndex;
+
+    private final Map<MavenProject, Optional<String>> keys = new IdentityHashMap<>();
+
+    /**
+     * @return key of given project, empty if it has none or it was not computed.
+     */
+    public synchronized Optional<String> get(MavenProject project) {
+        return keys.getOrDefault(project, Optional.empty());
+    }
+
+    /**
+     * Computes keys of given projects unless already computed.
+     */
+    public synchronized void compute(Collection<MavenProject> projects) throws GitAPIException, IOException {
+        final List<MavenProject> missing = projects.stream().filter(p -> ! keys.containsKey(p)).collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return;
+        }
+        final Path workTree = git.getRepository().getWorkTree().toPath().toRealPath();
+        final Map<MavenProject, String> modules = new IdentityHashMap<>();
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(git.getRepository().getDirectory()).setMustExist(true).build();
+             Git current = Git.wrap(repository)) {
+            final ObjectId tree = repository.resolve(Constants.HEAD + "^{tree}");
+            if (tree != null) {
+                final Status status = current.status().call();
+                final Set<String> dirty = new HashSet<>(status.getUncommittedChanges());
+                dirty.addAll(status.getUntracked());
+                for (MavenProject project: dependencyGraph.getAllDependencies(missing)) {
+                    final String dir = workTree.relativize(moduleIndex.getBaseDir(project)).toString().replace(File.separatorChar, '/');
+                    final ObjectId subtree = getSubtree(repository, tree, dir);
+                    if (subtree != null && dirty.stream().noneMatch(path -> dir.isEmpty() || path.startsWith(dir + "/"))) {
+                        modules.put(project, "module " + dir + " " + subtree.name() + " " + hashModel(project, workTree) + "\n");
+                    }
+                }
+            }
+        }
+        for (MavenProject project: missing) {
+            final Set<MavenProject> dependencies = dependencyGraph.getAllDependencies(Collections.singleton(project));
+            if (modules.keySet().containsAll(dependencies)) {
+                final MessageDigest digest = Constants.newMessageDigest();
+                digest.update(Constants.encode("java " + System.getProperty("java.specification.version") + "\n"));
+                dependencies.stream().map(modules::get).sorted().forEach(module -> digest.update(Constants.encode(module)));
+                keys.put(project, Optional.of(ObjectId.fromRaw(digest.digest()).name()));
+            } else {
+                logger.debug(project.getArtifactId() + ": Uncommitted changes in module or its dependencies. No source key.");
+                keys.put(project, Optional.empty());
+            }
+        }
+    }
+
+    private static ObjectId getSubtree(Repository repository, ObjectId tree, String dir) throws IOException {
+        if (dir.isEmpty()) {
+            return tree;
+        }
+        try (TreeWalk walk = TreeWalk.forPath(repository, dir, tree)) {
+            return walk == null ? null : walk.getObjectId(0);
+        }
+    }
+
+    /**
+     * Absolute paths of the checkout are removed, so that keys match across checkout locations.
+     */
+    private static String hashModel(MavenProject project, Path workTree) throws IOException {
+        final StringWriter writer = new StringWriter();
+        new MavenXpp3Writer().write(writer, project.getModel());
+        final MessageDigest digest = Constants.newMessageDigest();
+        digest.update(Constants.encode(writer.toString().replace(workTree.toString(), "")));
+        return ObjectId.fromRaw(digest.digest()).name();
+    }
+}
@@ -0,0 +1,87 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds changed modules by comparing tree ids instead of listing every changed file. Identical subtrees are skipped
+ * without being read and a differing subtree is descended into only while its owning module is not yet known to be
+ * changed or while it still contains nested modules. The walk stops once all modules are changed.
+ */
+@Singleton
+public class ModuleTreeDiff {
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private PathPatterns pathPatterns;
+    @Inject private ObjectAccess objectAccess;
+
+    /**
+     * @param moduleDirs projects keyed by their '/' separated base dir relative to the work tree.
+     */
+    public Set<MavenProject> get(Repository repository, RevTree base, RevTree reference, Map<String, MavenProject> moduleDirs, Path workTree) throws IOException {
+        final Set<String> containers = getContainers(moduleDirs.keySet());
+        final Set<MavenProject> changed = new HashSet<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository, objectAccess.getReader())) {
+            treeWalk.addTree(base);
+            treeWalk.addTree(reference);
+            treeWalk.setFilter(pathPatterns.and(TreeFilter.ANY_DIFF));
+            treeWalk.setRecursive(false);
+            while (changed.size() < moduleDirs.size() && treeWalk.next()) {
+                final String path = treeWalk.getPathString();
+                if (treeWalk.isSubtree()) {
+                    final MavenProject owner = findOwner(path, moduleDirs);
+                    if (containers.contains(path) || (owner != null && ! changed.contains(owner))) {
+                        treeWalk.enterSubtree();
+                    }
+                } else if (! configuration.excludePathRegex.test(workTree.resolve(path).normalize().toString())) {
+                    final MavenProject owner = findOwner(parent(path), moduleDirs);
+                    if (owner != null && changed.add(owner)) {
+                        logger.debug("Changed module: " + owner.getArtifactId() + " first detected by: " + path);
+                    }
+                }
+            }
+        }
+        if (changed.size() == moduleDirs.size()) {
+            logger.debug("All modules changed. Skipping rest of module tree diff.");
+        }
+        return changed;
+    }
+
+    private MavenProject findOwner(String dir, Map<String, MavenProject> moduleDirs) {
+        String path = dir;
+        while (! moduleDirs.containsKey(path) && ! path.isEmpty()) {
+            path = parent(path);
+        }
+        return moduleDirs.get(path);
+    }
+
+    private Set<String> getContainers(Set<String> moduleDirs) {
+        final Set<String> containers = new HashSet<>();
+        for (String dir: moduleDirs) {
+            String path = parent(dir);
+            while (! path.isEmpty() && containers.add(path)) {
+                path = parent(path);
+            }
+        }
+        return containers;
+    }
+
+    private static String parent(String path) {
+        final int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+}
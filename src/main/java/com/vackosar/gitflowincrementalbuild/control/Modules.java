@@ -6,7 +6,10 @@ import org.apache.maven.project.MavenProject;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -17,6 +20,21 @@ public class Modules {
                 .collect(Collectors.toMap(Modules::getPath, project -> project));
     }
 
+    /**
+     * @return given dirs of the project, which Maven resolves under its original base dir, relative to that base dir.
+     * Missing dirs and dirs outside of the base dir are omitted.
+     */
+    static List<Path> getRelativeDirs(MavenProject project, Collection<String> dirs) {
+        final Path basedir = project.getBasedir().toPath().normalize().toAbsolutePath();
+        return dirs.stream()
+                .filter(Objects::nonNull)
+                .map(dir -> basedir.resolve(dir).normalize())
+                .filter(dir -> dir.startsWith(basedir) && ! dir.equals(basedir))
+                .map(basedir::relativize)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
     private static Path getPath(MavenProject project) {
         try {
             return project.getBasedir().toPath().normalize().toAbsolutePath().toRealPath();
@@ -0,0 +1,210 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Runs the git executable and streams its NUL delimited output, which avoids loading pack indexes into the JVM on
+ * large repositories.
+ */
+@Singleton
+public class NativeGitBackend implements GitBackend {
+
+    private static final int NOT_FOUND = 1;
+
+    @Inject private Git git;
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+    @Inject private PathPatterns pathPatterns;
+
+    private Boolean available;
+
+    public boolean isAvailable() {
+        if (available == null) {
+            try {
+                run(Collections.singletonList("--version"), '\n', all(version -> logger.debug("Using " + version)), false);
+                available = true;
+            } catch (IOException e) {
+                logger.debug("Git executable '" + configuration.gitExecutable + "' is not usable: " + e.getMessage());
+                available = false;
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public void fetch(String remoteName, String refSpec, boolean followTags) throws IOException {
+        final List<String> args = new ArrayList<>(Arrays.asList("fetch", "--quiet"));
+        if (! followTags) {
+            args.add("--no-tags");
+        }
+        args.add(remoteName);
+        args.add(refSpec);
+        run(args, '\n', all(logger::info), false);
+    }
+
+    @Override
+    public Map<String, ObjectId> lsRemote(String remoteName) throws IOException {
+        final Map<String, ObjectId> refs = new HashMap<>();
+        run(Arrays.asList("ls-remote", "--heads", remoteName), '\n', all(line -> {
+            final String[] fields = line.split("\t", 2);
+            refs.put(fields[1], ObjectId.fromString(fields[0]));
+        }), false);
+        return refs;
+    }
+
+    @Override
+    public ObjectId resolve(String revision) throws IOException {
+        final List<String> ids = new ArrayList<>();
+        return run(Arrays.asList("rev-parse", "--verify", "--quiet", revision), '\n', all(ids::add), true) ? ObjectId.fromString(ids.get(0)) : null;
+    }
+
+    @Override
+    public ObjectId getMergeBase(AnyObjectId base, AnyObjectId reference) throws IOException {
+        final List<String> ids = new ArrayList<>();
+        return run(Arrays.asList("merge-base", base.name(), reference.name()), '\n', all(ids::add), true) ? ObjectId.fromString(ids.get(0)) : null;
+    }
+
+    @Override
+    public void diff(AnyObjectId baseTree, AnyObjectId referenceTree, Predicate<String> paths) throws IOException {
+        final List<String> args = new ArrayList<>(Arrays.asList("diff-tree", "-r", "-z", "--name-only", "--no-renames", baseTree.name(), referenceTree.name()));
+        final List<String> pathspecs = pathPatterns.getPathspecs();
+        if (! pathspecs.isEmpty()) {
+            args.add("--");
+            args.addAll(pathspecs);
+        }
+        // git may read glob metacharacters of the patterns differently, the filter stays as a safety net
+        run(args, '\0', path -> ! pathPatterns.accepts(path) || paths.test(path), false);
+    }
+
+    @Override
+    public void status(Consumer<String> paths) throws IOException {
+        run(Arrays.asList("status", "--porcelain=v2", "-z", "--untracked-files=no"), '\0', all(new StatusParser(paths)), false);
+    }
+
+    /**
+     * @param records visitor of output records, the process is stopped once it returns false.
+     * @param mayNotFind whether exit code 1 means nothing was found rather than a failure.
+     * @return false if nothing was found.
+     */
+    private boolean run(List<String> args, char separator, Predicate<String> records, boolean mayNotFind) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(configuration.gitExecutable);
+        command.add("--git-dir=" + git.getRepository().getDirectory().getAbsolutePath());
+        if (! git.getRepository().isBare()) {
+            command.add("--work-tree=" + git.getRepository().getWorkTree().getAbsolutePath());
+        }
+        command.addAll(args);
+        logger.debug("Running " + String.join(" ", command));
+        final ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().put("GIT_OPTIONAL_LOCKS", "0");
+        final Process process = builder.start();
+        process.getOutputStream().close();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final Thread errorReader = new Thread(() -> copy(process.getErrorStream(), errors), "gib-git-stderr");
+        errorReader.start();
+        try (InputStream in = new BufferedInputStream(process.getInputStream())) {
+            final ByteArrayOutputStream record = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != separator) {
+                    record.write(b);
+                } else if (records.test(new String(record.toByteArray(), StandardCharsets.UTF_8))) {
+                    record.reset();
+                } else {
+                    logger.debug("Stopping " + String.join(" ", command));
+                    process.destroy();
+                    return true;
+                }
+            }
+            if (record.size() > 0) {
+                records.test(new String(record.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+        final int exitCode;
+        try {
+            exitCode = process.waitFor();
+            errorReader.join();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running " + String.join(" ", command));
+        }
+        if (exitCode == NOT_FOUND && mayNotFind) {
+            return false;
+        } else if (exitCode != 0) {
+            throw new IOException("Git command '" + String.join(" ", args) + "' failed with exit code " + exitCode + ": "
+                    + new String(errors.toByteArray(), StandardCharsets.UTF_8).trim());
+        }
+        return true;
+    }
+
+    private static Predicate<String> all(Consumer<String> records) {
+        return record -> {
+            records.accept(record);
+            return true;
+        };
+    }
+
+    private static void copy(InputStream in, OutputStream out) {
+        final byte[] buffer = new byte[4096];
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // the process died, its exit code is reported instead
+        }
+    }
+
+    /**
+     * Extracts paths from porcelain v2 records. Renamed and copied entries are followed by a record holding the
+     * original path, which is listed too.
+     */
+    private static class StatusParser implements Consumer<String> {
+
+        private final Consumer<String> paths;
+        private boolean originalPathFollows;
+
+        private StatusParser(Consumer<String> paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        public void accept(String record) {
+            if (originalPathFollows) {
+                originalPathFollows = false;
+                paths.accept(record);
+            } else if (record.startsWith("1 ")) {
+                paths.accept(record.split(" ", 9)[8]);
+            } else if (record.startsWith("2 ")) {
+                paths.accept(record.split(" ", 10)[9]);
+                originalPathFollows = true;
+            } else if (record.startsWith("u ")) {
+                paths.accept(record.split(" ", 11)[10]);
+            }
+        }
+    }
+}
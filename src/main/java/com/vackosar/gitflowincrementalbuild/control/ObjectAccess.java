@@ -0,0 +1,47 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Object reader and revision walk shared by all steps of one changed files computation, so that parsed commits and
+ * inflated objects are reused between branch resolution, merge base search and tree diffs. Not thread safe, parallel
+ * tasks open their own readers.
+ */
+@Singleton
+public class ObjectAccess {
+
+    @Inject private Git git;
+
+    private ObjectReader reader;
+    private RevWalk walk;
+
+    public ObjectReader getReader() {
+        if (reader == null) {
+            reader = git.getRepository().newObjectReader();
+        }
+        return reader;
+    }
+
+    public RevWalk getWalk() {
+        if (walk == null) {
+            walk = new RevWalk(getReader());
+        }
+        return walk;
+    }
+
+    public void close() {
+        if (walk != null) {
+            walk.close();
+            walk = null;
+        }
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+}
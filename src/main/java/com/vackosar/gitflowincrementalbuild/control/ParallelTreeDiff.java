@@ -0,0 +1,118 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Lists paths differing between two trees on a fork join pool. Identical subtrees are skipped by id and differing
+ * subtrees are walked by separate tasks, each with its own object reader, while the pool is short of queued work.
+ * Found paths are passed to the visitor one at a time and all tasks stop once it returns false.
+ */
+@Singleton
+public class ParallelTreeDiff {
+
+    private static final int SURPLUS_TASKS = 3;
+
+    /**
+     * @param filter filter of each task's tree walk, it sees paths relative to the root trees.
+     */
+    public void get(Repository repository, AnyObjectId base, AnyObjectId reference, TreeFilter filter, int parallelism, Predicate<String> paths) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DiffTask(new Walk(repository, filter, paths), null, base.copy(), reference.copy()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class Walk {
+        private final Repository repository;
+        private final TreeFilter filter;
+        private final Predicate<String> paths;
+        private final AtomicBoolean stopped = new AtomicBoolean();
+
+        private Walk(Repository repository, TreeFilter filter, Predicate<String> paths) {
+            this.repository = repository;
+            this.filter = filter;
+            this.paths = paths;
+        }
+
+        private synchronized void visit(String path) {
+            if (! stopped.get() && ! paths.test(path)) {
+                stopped.set(true);
+            }
+        }
+    }
+
+    private static class DiffTask extends RecursiveAction {
+
+        private final Walk walk;
+        private final byte[] prefix;
+        private final ObjectId base;
+        private final ObjectId reference;
+
+        private DiffTask(Walk walk, byte[] prefix, ObjectId base, ObjectId reference) {
+            this.walk = walk;
+            this.prefix = prefix;
+            this.base = base;
+            this.reference = reference;
+        }
+
+        @Override
+        protected void compute() {
+            final List<DiffTask> forks = new ArrayList<>();
+            try (ObjectReader reader = walk.repository.newObjectReader(); TreeWalk treeWalk = new TreeWalk(reader)) {
+                treeWalk.addTree(createParser(reader, base, reference));
+                treeWalk.addTree(createParser(reader, reference, base));
+                treeWalk.setFilter(walk.filter.clone());
+                treeWalk.setRecursive(false);
+                while (! walk.stopped.get() && treeWalk.next()) {
+                    if (! treeWalk.isSubtree()) {
+                        walk.visit(treeWalk.getPathString());
+                    } else if (getSurplusQueuedTaskCount() < SURPLUS_TASKS) {
+                        final byte[] path = Arrays.copyOf(treeWalk.getRawPath(), treeWalk.getPathLength());
+                        final DiffTask fork = new DiffTask(walk, path, treeWalk.getObjectId(0), treeWalk.getObjectId(1));
+                        fork.fork();
+                        forks.add(fork);
+                    } else {
+                        treeWalk.enterSubtree();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            forks.forEach(DiffTask::join);
+        }
+
+        /**
+         * Creates a parser whose paths start with the task prefix. A subtree missing on one side is parsed as an empty
+         * tree under the same prefix.
+         */
+        private CanonicalTreeParser createParser(ObjectReader reader, ObjectId tree, ObjectId other) throws IOException {
+            if (ObjectId.zeroId().equals(tree)) {
+                final CanonicalTreeParser parser = new CanonicalTreeParser(prefix, reader, other);
+                parser.reset(new byte[0]);
+                return parser;
+            }
+            return new CanonicalTreeParser(prefix, reader, tree);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Include and exclude path sets relative to the work tree, compiled into a tree filter that prunes whole directories
+ * before their tree objects are read. Each entry is either a plain path prefix such as {@code docs} or a glob such as
+ * {@code **}{@code /node_modules} where {@code *} and {@code ?} match within a segment and {@code **} matches any
+ * number of segments. An entry matching a directory matches everything below it. Paths are matched as raw bytes.
+ */
+@Singleton
+public class PathPatterns {
+
+    @Inject private Configuration configuration;
+
+    private Filter filter;
+
+    /**
+     * @return given filter restricted to included and not excluded paths.
+     */
+    public TreeFilter and(TreeFilter treeFilter) {
+        return isEmpty() ? treeFilter : AndTreeFilter.create(getFilter(), treeFilter);
+    }
+
+    /**
+     * @return tree filter of included and not excluded paths, {@link TreeFilter#ALL} if no paths are configured.
+     */
+    public TreeFilter getTreeFilter() {
+        return isEmpty() ? TreeFilter.ALL : getFilter();
+    }
+
+    /**
+     * @param path '/' separated file path relative to the work tree.
+     */
+    public boolean accepts(String path) {
+        if (isEmpty()) {
+            return true;
+        }
+        final byte[] raw = path.getBytes(StandardCharsets.UTF_8);
+        return getFilter().accepts(raw, raw.length, false);
+    }
+
+    /**
+     * @return git pathspecs of included and not excluded paths relative to the top of the work tree, empty if no paths
+     * are configured. Each entry is listed with a {@code /**} suffix too, since git only matches leading directories of
+     * patterns without wildcards.
+     */
+    public List<String> getPathspecs() {
+        final List<String> pathspecs = new ArrayList<>();
+        if (isEmpty()) {
+            return pathspecs;
+        }
+        if (configuration.includePaths.isEmpty()) {
+            pathspecs.add(":/");
+        }
+        configuration.includePaths.forEach(pattern -> addPathspecs(pathspecs, "top,glob", pattern));
+        configuration.excludePaths.forEach(pattern -> addPathspecs(pathspecs, "top,exclude,glob", pattern));
+        return pathspecs;
+    }
+
+    private static void addPathspecs(List<String> pathspecs, String magic, String pattern) {
+        final String glob = pattern.replaceAll("^/+|/+$", "").replaceAll("([\\\\\\[\\]])", "\\\\$1");
+        pathspecs.add(":(" + magic + ")" + glob);
+        pathspecs.add(":(" + magic + ")" + glob + "/**");
+    }
+
+    private boolean isEmpty() {
+        return configuration.includePaths.isEmpty() && configuration.excludePaths.isEmpty();
+    }
+
+    private Filter getFilter() {
+        if (filter == null) {
+            filter = new Filter(compile(configuration.includePaths), compile(configuration.excludePaths));
+        }
+        return filter;
+    }
+
+    private static List<Glob> compile(List<String> patterns) {
+        return patterns.stream().map(Glob::new).collect(Collectors.toList());
+    }
+
+    private static class Filter extends TreeFilter {
+
+        private final List<Glob> includes;
+        private final List<Glob> excludes;
+
+        private Filter(List<Glob> includes, List<Glob> excludes) {
+            this.includes = includes;
+            this.excludes = excludes;
+        }
+
+        @Override
+        public boolean include(TreeWalk walker) {
+            return accepts(walker.getRawPath(), walker.getPathLength(), walker.isSubtree());
+        }
+
+        private boolean accepts(byte[] path, int length, boolean directory) {
+            for (Glob exclude: excludes) {
+                if (exclude.matchesSelfOrAncestor(path, length)) {
+                    return false;
+                }
+            }
+            if (includes.isEmpty()) {
+                return true;
+            }
+            for (Glob include: includes) {
+                if (include.matchesSelfOrAncestor(path, length) || (directory && include.mayMatchBelow(path, length))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return true;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "PATH_PATTERNS(include " + includes + ", exclude " + excludes + ")";
+        }
+    }
+
+    private static class Glob {
+
+        private static final byte[] ANY_SEGMENTS = "**".getBytes(StandardCharsets.UTF_8);
+
+        private final String pattern;
+        private final byte[][] segments;
+
+        private Glob(String pattern) {
+            this.pattern = pattern;
+            final String trimmed = pattern.replaceAll("^/+|/+$", "");
+            final String[] parts = trimmed.split("/+");
+            this.segments = new byte[parts.length][];
+            for (int i = 0; i < parts.length; i++) {
+                segments[i] = parts[i].equals("**") ? ANY_SEGMENTS : parts[i].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        private boolean matchesSelfOrAncestor(byte[] path, int length) {
+            for (int end = 0; end <= length; end++) {
+                if ((end == length || path[end] == '/') && match(0, path, 0, end, false)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean mayMatchBelow(byte[] path, int length) {
+            return match(0, path, 0, length, true);
+        }
+
+        /**
+         * @param partial whether a path running out before the pattern does counts as a match.
+         */
+        private boolean match(int segment, byte[] path, int start, int end, boolean partial) {
+            if (start >= end) {
+                if (partial) {
+                    return true;
+                }
+                for (int i = segment; i < segments.length; i++) {
+                    if (segments[i] != ANY_SEGMENTS) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (segment == segments.length) {
+                return false;
+            }
+            int segmentEnd = start;
+            while (segmentEnd < end && path[segmentEnd] != '/') {
+                segmentEnd++;
+            }
+            if (segments[segment] == ANY_SEGMENTS) {
+                return match(segment + 1, path, start, end, partial) || match(segment, path, segmentEnd + 1, end, partial);
+            }
+            return matchSegment(segments[segment], 0, path, start, segmentEnd) && match(segment + 1, path, segmentEnd + 1, end, partial);
+        }
+
+        private static boolean matchSegment(byte[] glob, int g, byte[] path, int p, int end) {
+            while (g < glob.length) {
+                if (glob[g] == '*') {
+                    for (int i = p; i <= end; i++) {
+                        if (matchSegment(glob, g + 1, path, i, end)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (p == end || (glob[g] != '?' && glob[g] != path[p])) {
+                    return false;
+                }
+                g++;
+                p++;
+            }
+            return p == end;
+        }
+
+        @Override
+        public String toString() {
+            return pattern;
+        }
+    }
+}
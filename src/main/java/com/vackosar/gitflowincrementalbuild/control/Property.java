@@ -16,7 +16,42 @@ public enum Property {
     fetchReferenceBranch("false"),
     excludePathRegex(Constants.NEVER_MATCH_REGEX),
     failOnMissingGitDir("true"),
-    failOnError("true")
+    failOnError("true"),
+    compareModuleTrees("false"),
+    diffCache("false"),
+    diffCacheDir(""),
+    diffCacheSize("64"),
+    diffCacheBytes("16777216"),
+    mergeBaseIndex("false"),
+    checkoutBaseBranch("true"),
+    singlePassDiff("false"),
+    gitBackend("jgit"),
+    gitExecutable("git"),
+    diffParallelism("1"),
+    buildAllThreshold("1.0"),
+    aggregateModules("false"),
+    includePaths(""),
+    excludePaths(""),
+    packedGitMMAP(""),
+    packedGitWindowSize(""),
+    packedGitOpenFiles(""),
+    packedGitLimit(""),
+    deltaBaseCacheLimit(""),
+    conditionalFetch("false"),
+    earlyStart("false"),
+    stageParallelism("4"),
+    stageReport(""),
+    isolateTestChanges("false"),
+    selectTests("false"),
+    compareAbi("false"),
+    abiStableDependents("test"),
+    abiDir(""),
+    buildCache("false"),
+    buildCacheDir(""),
+    buildCacheSize("1000"),
+    skipInstalledUpstream("false"),
+    criticalPathOrder("false"),
+    buildHistoryFile("")
     ;
 
     public static final String PREFIX = "gib.";
@@ -0,0 +1,51 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one stage. Only loaded through {@link Recorder} when the jdk.jfr API is present, so callers pass events
+ * around as objects. Left out of builds on JDK 8 without the API, before 8u262 or without jfr.jar.
+ */
+@Name("com.vackosar.gitflowincrementalbuild.Stage")
+@Label("Incremental Build Stage")
+@Category("Maven")
+@Description("Stage of gitflow-incremental-builder with its counts.")
+class StageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    @Label("Counts")
+    String counts;
+
+    static class Recorder implements Stages.Recorder {
+
+        @Override
+        public Object start() {
+            final StageEvent event = new StageEvent();
+            event.begin();
+            return event;
+        }
+
+        @Override
+        public void finish(Object begun, String stage, long allocated, String counts) {
+            final StageEvent event = (StageEvent) begun;
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage;
+                event.allocated = allocated;
+                event.counts = counts;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import org.codehaus.plexus.logging.Logger;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the stages of one run as a DAG of futures. Submitted stages start on a bounded pool of daemon threads once all
+ * their dependencies completed, so pooled tasks never block on each other. Stages run on the calling thread wait for
+ * their dependencies first. Wall clock time of every stage is recorded and reported together with the critical path,
+ * the dependency chain with the longest sum of stage times.
+ * <p>
+ * Stages also record named counts and, where the JVM supports it, bytes allocated by the thread running them. Each
+ * stage is emitted as JFR event when the jdk.jfr API is present and the last report can be written as JSON.
+ */
+@Singleton
+public class Stages {
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+    private static final ThreadLocal<Stage> CURRENT = new ThreadLocal<>();
+    private static final String FLIGHT_RECORDER_CLASS = "com.vackosar.gitflowincrementalbuild.control.StageEvent$Recorder";
+    private static final Optional<Recorder> FLIGHT_RECORDER = getFlightRecorder();
+
+    @Inject private Configuration configuration;
+    @Inject private Logger logger;
+
+    private final Map<CompletableFuture<?>, Stage> futures = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final List<Stage> stages = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Long> counts = Collections.synchronizedMap(new LinkedHashMap<>());
+    private ThreadPoolExecutor executor;
+    private String lastReport;
+
+    /**
+     * @return future of the result of given task started on the pool once all dependencies completed. Fails if any
+     * dependency failed.
+     */
+    public <T> CompletableFuture<T> submit(String name, Task<T> task, CompletableFuture<?>... dependencies) {
+        final Stage stage = new Stage(name, dependencies);
+        final CompletableFuture<T> future = CompletableFuture.allOf(dependencies)
+                .thenApplyAsync(v -> {
+                    try {
+                        return execute(stage, task);
+                    } catch (GitAPIException | IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, getExecutor());
+        futures.put(future, stage);
+        return future;
+    }
+
+    /**
+     * Runs given task on the calling thread once all dependencies completed.
+     */
+    public <T> T run(String name, Task<T> task, CompletableFuture<?>... dependencies) throws GitAPIException, IOException {
+        for (CompletableFuture<?> dependency: dependencies) {
+            join(dependency);
+        }
+        return execute(new Stage(name, dependencies), task);
+    }
+
+    /**
+     * Adds to a named count of the stage running on the current thread or, outside of any stage, of the whole run.
+     */
+    public void count(String name, long value) {
+        final Stage stage = CURRENT.get();
+        (stage == null ? counts : stage.counts).merge(name, value, Long::sum);
+    }
+
+    /**
+     * @return result of given future. Failures are rethrown unwrapped.
+     */
+    public static <T> T join(CompletableFuture<T> future) throws GitAPIException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for stage.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof GitAPIException) {
+                throw (GitAPIException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Logs times of all stages completed so far and forgets them, keeping a JSON report for {@link #write(Path)}.
+     */
+    public void report() {
+        final List<Stage> completed;
+        synchronized (stages) {
+            completed = new ArrayList<>(stages);
+            stages.clear();
+        }
+        final Map<String, Long> runCounts;
+        synchronized (counts) {
+            runCounts = new LinkedHashMap<>(counts);
+            counts.clear();
+        }
+        if (completed.isEmpty()) {
+            return;
+        }
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        Stage last = null;
+        for (Stage stage: completed) {
+            logger.debug("Stage " + stage.name + " took " + millis(stage.end - stage.start) + " ms" + (stage.counts.isEmpty() ? "" : ", " + stage.counts) + ".");
+            start = Math.min(start, stage.start);
+            end = Math.max(end, stage.end);
+            if (last == null || stage.getPathTime() > last.getPathTime()) {
+                last = stage;
+            }
+        }
+        final LinkedList<String> path = new LinkedList<>();
+        for (Stage stage = last; stage != null; stage = stage.getCriticalDependency()) {
+            path.addFirst(stage.name);
+        }
+        logger.info("Stages took " + millis(end - start) + " ms, critical path " + millis(last.getPathTime()) + " ms: "
+                + path.stream().collect(Collectors.joining(" > ")) + ".");
+        if (! runCounts.isEmpty()) {
+            logger.debug("Counts: " + runCounts);
+        }
+        lastReport = toJson(completed, start, end, last.getPathTime(), path, runCounts);
+        futures.clear();
+    }
+
+    /**
+     * Writes the last report as JSON. Nothing is written if no stages were reported.
+     */
+    public void write(Path file) throws IOException {
+        if (lastReport == null) {
+            return;
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tmp, lastReport.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Stage report written to " + file);
+    }
+
+    private <T> T execute(Stage stage, Task<T> task) throws GitAPIException, IOException {
+        final Stage enclosing = CURRENT.get();
+        CURRENT.set(stage);
+        final Object event = FLIGHT_RECORDER.map(Recorder::start).orElse(null);
+        final long allocated = getAllocatedBytes();
+        stage.start = System.nanoTime();
+        try {
+            return task.call();
+        } finally {
+            stage.end = System.nanoTime();
+            stage.allocatedBytes = allocated < 0 ? -1 : getAllocatedBytes() - allocated;
+            stage.completed = true;
+            CURRENT.set(enclosing);
+            if (event != null) {
+                FLIGHT_RECORDER.get().finish(event, stage.name, stage.allocatedBytes, stage.counts.toString());
+            }
+            stages.add(stage);
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(configuration.stageParallelism, configuration.stageParallelism, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        final Thread thread = new Thread(runnable, "gib-stage-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private static String toJson(List<Stage> completed, long start, long end, long criticalPath, List<String> path, Map<String, Long> runCounts) {
+        final StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"wallClockMillis\": ").append(millis(end - start)).append(",\n");
+        json.append("  \"criticalPathMillis\": ").append(millis(criticalPath)).append(",\n");
+        json.append("  \"criticalPath\": [").append(path.stream().map(Stages::quote).collect(Collectors.joining(", "))).append("],\n");
+        json.append("  \"counts\": ").append(toJson(runCounts)).append(",\n");
+        json.append("  \"stages\": [");
+        for (int i = 0; i < completed.size(); i++) {
+            final Stage stage = completed.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": ").append(quote(stage.name))
+                    .append(", \"startMillis\": ").append(millis(stage.start - start))
+                    .append(", \"durationMillis\": ").append(millis(stage.end - stage.start));
+            if (stage.allocatedBytes >= 0) {
+                json.append(", \"allocatedBytes\": ").append(stage.allocatedBytes);
+            }
+            json.append(", \"counts\": ").append(toJson(stage.counts)).append("}");
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    private static String toJson(Map<String, Long> counts) {
+        return counts.entrySet().stream().map(e -> quote(e.getKey()) + ": " + e.getValue()).collect(Collectors.joining(", ", "{", "}"));
+    }
+
+    private static String quote(String value) {
+        final StringBuilder quoted = new StringBuilder("\"");
+        for (char c: value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static long getAllocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The recorder is loaded by name, so that classes using the jdk.jfr API are neither loaded on JVMs without it nor
+     * required when the extension was built without them.
+     */
+    private static Optional<Recorder> getFlightRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return Optional.of(Class.forName(FLIGHT_RECORDER_CLASS).asSubclass(Recorder.class).newInstance());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return Optional.empty();
+        }
+    }
+
+    private static long millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Emits stages as JFR events.
+     */
+    interface Recorder {
+
+        Object start();
+
+        void finish(Object begun, String stage, long allocated, String counts);
+    }
+
+    private class Stage {
+
+        private final String name;
+        private final CompletableFuture<?>[] dependencies;
+        private final Map<String, Long> counts = new LinkedHashMap<>();
+        private volatile long start;
+        private volatile long end;
+        private volatile long allocatedBytes;
+        private volatile boolean completed;
+
+        private Stage(String name, CompletableFuture<?>[] dependencies) {
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+
+        private Stage getCriticalDependency() {
+            Stage critical = null;
+            for (CompletableFuture<?> dependency: dependencies) {
+                final Stage stage = futures.get(dependency);
+                if (stage != null && stage.completed && (critical == null || stage.getPathTime() > critical.getPathTime())) {
+                    critical = stage;
+                }
+            }
+            return critical;
+        }
+
+        private long getPathTime() {
+            final Stage critical = getCriticalDependency();
+            return end - start + (critical == null ? 0 : critical.getPathTime());
+        }
+    }
+
+    public interface Task<T> {
+        T call() throws GitAPIException, IOException;
+    }
+}
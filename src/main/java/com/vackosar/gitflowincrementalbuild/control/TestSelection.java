@@ -0,0 +1,145 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Selects the test classes of impacted projects which transitively reference a changed class. Changed Java sources
+ * are mapped to classes and the references are taken from the class files left by the previous build, indexed by
+ * {@link ClassIndex}. Selection is static, classes only reached by reflection are missed.
+ */
+@Singleton
+public class TestSelection {
+
+    private static final String CACHE_PREFIX = "gib-class-index-";
+    private static final String JAVA_SUFFIX = ".java";
+    private static final Pattern TEST_CLASS = Pattern.compile("Test.*|.*Test|.*Tests|.*TestCase");
+
+    @Inject private Logger logger;
+    @Inject private ChangedProjects changedProjects;
+    @Inject private ClassIndex classIndex;
+
+    /**
+     * @return test classes in internal form selected in each of given projects. Main classes of all given projects are
+     * indexed, so that references through projects without tests are followed. Projects without test classes of a
+     * previous build are missing and nothing is selected if any changed file is not a Java source.
+     */
+    public Map<MavenProject, List<String>> select(Collection<MavenProject> projects) throws IOException {
+        final Optional<Map<MavenProject, Set<Path>>> changedFiles = changedProjects.getChangedFiles();
+        if (! changedFiles.isPresent()) {
+            logger.info("Changed files not known. Running all tests.");
+            return Collections.emptyMap();
+        }
+        final Map<MavenProject, Set<String>> changedClasses = new HashMap<>();
+        for (Map.Entry<MavenProject, Set<Path>> entry: changedFiles.get().entrySet()) {
+            final List<Path> sourceRoots = getSourceRoots(entry.getKey());
+            for (Path file: entry.getValue()) {
+                final Optional<String> name = getClassName(sourceRoots, file);
+                if (! name.isPresent()) {
+                    logger.info("Changed file " + file + " of " + entry.getKey().getArtifactId() + " is not a Java source. Running all tests.");
+                    return Collections.emptyMap();
+                }
+                changedClasses.computeIfAbsent(entry.getKey(), p -> new HashSet<>()).add(name.get());
+            }
+        }
+        final Map<String, Set<String>> references = new HashMap<>();
+        final Map<MavenProject, Set<String>> tests = new LinkedHashMap<>();
+        for (MavenProject project: projects) {
+            final Build build = project.getBuild();
+            final Path buildDir = resolve(project, build.getDirectory(), "target");
+            final Path classes = resolve(project, build.getOutputDirectory(), "target/classes");
+            merge(references, classIndex.get(classes, buildDir.resolve(CACHE_PREFIX + "classes")));
+        }
+        for (MavenProject project: projects) {
+            final Build build = project.getBuild();
+            final Path testClasses = resolve(project, build.getTestOutputDirectory(), "target/test-classes");
+            if (! Files.isDirectory(testClasses)) {
+                logger.debug(project.getArtifactId() + ": No test classes of previous build. Running all tests.");
+                continue;
+            }
+            final Path buildDir = resolve(project, build.getDirectory(), "target");
+            final Map<String, Set<String>> testReferences = classIndex.get(testClasses, buildDir.resolve(CACHE_PREFIX + "test-classes"));
+            merge(references, testReferences);
+            final Set<String> projectTests = new TreeSet<>(testReferences.keySet());
+            projectTests.addAll(changedClasses.getOrDefault(project, Collections.emptySet()));
+            tests.put(project, projectTests);
+        }
+        final Set<String> affected = getAffected(references, changedClasses.values().stream()
+                .flatMap(Set::stream).collect(Collectors.toSet()));
+        final Map<MavenProject, List<String>> selected = new LinkedHashMap<>();
+        tests.forEach((project, names) -> selected.put(project, names.stream()
+                .filter(affected::contains)
+                .filter(TestSelection::isTestClass)
+                .collect(Collectors.toList())));
+        return selected;
+    }
+
+    private static Set<String> getAffected(Map<String, Set<String>> references, Set<String> changed) {
+        final Map<String, List<String>> dependents = new HashMap<>();
+        references.forEach((name, referenced) -> referenced.forEach(r -> dependents.computeIfAbsent(r, k -> new ArrayList<>()).add(name)));
+        final Set<String> affected = new HashSet<>(changed);
+        final Deque<String> queue = new ArrayDeque<>(changed);
+        while (! queue.isEmpty()) {
+            for (String dependent: dependents.getOrDefault(queue.poll(), Collections.emptyList())) {
+                if (affected.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return affected;
+    }
+
+    private static void merge(Map<String, Set<String>> references, Map<String, Set<String>> added) {
+        added.forEach((name, referenced) -> references.computeIfAbsent(name, k -> new HashSet<>()).addAll(referenced));
+    }
+
+    private static List<Path> getSourceRoots(MavenProject project) {
+        final List<String> roots = new ArrayList<>();
+        roots.add("src/main/java");
+        roots.add("src/test/java");
+        roots.addAll(project.getCompileSourceRoots());
+        roots.addAll(project.getTestCompileSourceRoots());
+        return Modules.getRelativeDirs(project, roots);
+    }
+
+    private static Optional<String> getClassName(List<Path> sourceRoots, Path file) {
+        if (! file.toString().endsWith(JAVA_SUFFIX)) {
+            return Optional.empty();
+        }
+        return sourceRoots.stream().filter(file::startsWith).findFirst().map(root -> {
+            final String relative = root.relativize(file).toString().replace(File.separatorChar, '/');
+            return relative.substring(0, relative.length() - JAVA_SUFFIX.length());
+        });
+    }
+
+    private static boolean isTestClass(String name) {
+        return TEST_CLASS.matcher(name.substring(name.lastIndexOf('/') + 1)).matches();
+    }
+
+    private static Path resolve(MavenProject project, String dir, String defaultDir) {
+        return project.getBasedir().toPath().resolve(dir == null ? defaultDir : dir);
+    }
+}
@@ -61,6 +61,23 @@ public class MavenInstallRunningIntegrationTest extends BaseRepoTest {
         Assert.assertTrue(output.contains("[INFO] Tests are skipped."));
     }
     
+    @Test
+    public void buildAllOverThreshold() throws Exception {
+        final String output = executeBuild(Collections.singletonList("-Dgib." + Property.buildAllThreshold.name() + "=0.1"));
+        System.out.println(output);
+
+        Assert.assertTrue(output.contains("reached build all threshold of 0.1. Building all."));
+        Assert.assertTrue(output.contains(" child1"));
+        Assert.assertTrue(output.contains(" child2"));
+        Assert.assertTrue(output.contains(" subchild1"));
+        Assert.assertTrue(output.contains(" subchild42"));
+        Assert.assertTrue(output.contains(" subchild2"));
+        Assert.assertTrue(output.contains(" child3"));
+        Assert.assertTrue(output.contains(" child4"));
+        Assert.assertTrue(output.contains(" subchild41"));
+        Assert.assertTrue(output.contains(" child6"));
+    }
+
     @Test
     public void buildWithAlsoMake() throws Exception {
         final String output = executeBuild(Collections.singletonList("-am"));
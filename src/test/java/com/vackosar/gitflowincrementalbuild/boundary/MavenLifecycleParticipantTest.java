@@ -10,6 +10,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
@@ -66,6 +69,53 @@ public class MavenLifecycleParticipantTest extends BaseRepoTest {
         Assert.assertTrue(builder.toString().contains("gitflow-incremental-builder starting..."));
     }
 
+    @Test
+    public void earlyStart() throws Exception {
+        Property.earlyStart.setValue("true");
+        MavenSession session = getMavenSessionMock();
+        participant.afterSessionStart(session);
+        participant.afterProjectsRead(session);
+        Assert.assertEquals(1, count(builder.toString(), "Git dir is: "));
+        Assert.assertTrue(builder.toString().contains("gitflow-incremental-builder exiting..."));
+    }
+
+    @Test
+    public void earlyStartDiscardedOnPomProperty() throws Exception {
+        Property.earlyStart.setValue("true");
+        Property.uncommited.setValue(null);
+        MavenSession session = getMavenSessionMock();
+        participant.afterSessionStart(session);
+        session.getTopLevelProject().getProperties().setProperty(Property.uncommited.fullName(), "false");
+        participant.afterProjectsRead(session);
+        Assert.assertEquals(2, count(builder.toString(), "Git dir is: "));
+        Assert.assertTrue(builder.toString().contains("gitflow-incremental-builder exiting..."));
+    }
+
+    @Test
+    public void earlyStartFailOnErrorFalse() throws Exception {
+        Property.earlyStart.setValue("true");
+        Property.failOnError.setValue("false");
+        MavenSession session = getMavenSessionMock();
+        when(session.getCurrentProject()).thenThrow(new RuntimeException("FAIL !!!"));
+        participant.afterSessionStart(session);
+        participant.afterProjectsRead(session);
+        Assert.assertTrue(builder.toString().contains("gitflow-incremental-builder execution skipped:"));
+        Assert.assertTrue(builder.toString().contains("FAIL !!!"));
+    }
+
+    @Test
+    public void writesStageReport() throws Exception {
+        Property.stageReport.setValue("gib-stages.json");
+        MavenSession session = getMavenSessionMock();
+        participant.afterProjectsRead(session);
+        participant.afterSessionEnd(session);
+        final Path report = session.getTopLevelProject().getBasedir().toPath().resolve("target/gib-stages.json");
+        final String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        Assert.assertTrue(json.contains("\"criticalPath\": ["));
+        Assert.assertTrue(json.contains("{\"name\": \"diff\""));
+        Assert.assertTrue(json.contains("\"changed files\": "));
+    }
+
     @Test
     public void failOnErrorFalse() throws Exception {
         Property.failOnError.setValue("false");
@@ -86,4 +136,8 @@ public class MavenLifecycleParticipantTest extends BaseRepoTest {
         Assert.assertTrue(builder.toString().contains("FAIL !!!"));
     }
 
+    private static int count(String text, String part) {
+        return text.split(part, -1).length - 1;
+    }
+
 }
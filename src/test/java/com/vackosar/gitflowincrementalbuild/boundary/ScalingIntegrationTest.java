@@ -0,0 +1,90 @@
+package com.vackosar.gitflowincrementalbuild.boundary;
+
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.mocks.SyntheticRepoMock;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.ArgumentCaptor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the whole extension on generated repositories of growing size and checks the built modules together with time
+ * and heap budgets of each tier. Budgets are generous, they catch complexity regressions rather than slowdowns.
+ */
+@RunWith(Parameterized.class)
+public class ScalingIntegrationTest extends BaseRepoTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final int modules;
+    private final int files;
+    private final long millisBudget;
+    private final long heapBudget;
+
+    public ScalingIntegrationTest(String tier, int modules, int files, long millisBudget, long heapBudget) {
+        this.modules = modules;
+        this.files = files;
+        this.millisBudget = millisBudget;
+        this.heapBudget = heapBudget * MB;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> tiers() {
+        return Arrays.asList(new Object[][] {
+                {"small", 20, 10, 10_000, 128},
+                {"medium", 200, 10, 20_000, 256},
+                {"large", 1000, 5, 60_000, 512},
+        });
+    }
+
+    @Test
+    public void buildsImpactedModulesWithinBudget() throws Exception {
+        try (SyntheticRepoMock repo = new SyntheticRepoMock(temporaryFolder.getRoot(), modules, files, 6, 2, modules)) {
+            final MavenSession session = repo.getMavenSession();
+            final MavenLifecycleParticipant participant = new MavenLifecycleParticipant();
+            final Field loggerField = participant.getClass().getDeclaredField("logger");
+            loggerField.setAccessible(true);
+            loggerField.set(participant, mock(Logger.class));
+
+            final List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .collect(Collectors.toList());
+            System.gc();
+            final long used = heap.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+            heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+            final long start = System.currentTimeMillis();
+            participant.afterProjectsRead(session);
+            final long millis = System.currentTimeMillis() - start;
+            final long peak = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() - used;
+
+            @SuppressWarnings("unchecked")
+            final ArgumentCaptor<List<MavenProject>> built = ArgumentCaptor.forClass((Class) List.class);
+            verify(session).setProjects(built.capture());
+            Assert.assertEquals(new TreeSet<>(repo.getImpacted()), artifactIds(built.getValue()));
+            Assert.assertTrue("Took " + millis + " ms.", millis < millisBudget);
+            Assert.assertTrue("Used " + peak / MB + " MB of heap.", peak < heapBudget);
+        }
+    }
+
+    private static Set<String> artifactIds(List<MavenProject> projects) {
+        return projects.stream().map(MavenProject::getArtifactId).collect(Collectors.toCollection(TreeSet::new));
+    }
+}
@@ -0,0 +1,110 @@
+package com.vackosar.gitflowincrementalbuild.boundary;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.control.AbiFingerprints;
+import com.vackosar.gitflowincrementalbuild.control.ChangedProjects;
+import com.vackosar.gitflowincrementalbuild.control.ModuleIndex;
+import com.vackosar.gitflowincrementalbuild.control.Property;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UnchangedProjectsRemoverTest extends BaseRepoTest {
+
+    private static final String MAVEN_MAIN_SKIP = "maven.main.skip";
+
+    private MavenProject core;
+    private MavenProject api;
+    private MavenProject app;
+
+    @Before
+    public void before() throws Exception {
+        super.before();
+        Property.compareAbi.setValue(Boolean.TRUE.toString());
+        core = createProject("core");
+        api = createProject("api", core);
+        app = createProject("app", api);
+    }
+
+    @Test
+    public void runsOnlyTestsOfDirectDependentsWithUnchangedApi() throws Exception {
+        Files.createDirectories(api.getBasedir().toPath().resolve("target/classes"));
+        final MavenSession session = act();
+        verify(session).setProjects(Arrays.asList(core, api));
+        Assert.assertEquals(Boolean.TRUE.toString(), api.getProperties().getProperty(MAVEN_MAIN_SKIP));
+        Assert.assertNull(core.getProperties().getProperty(MAVEN_MAIN_SKIP));
+    }
+
+    @Test
+    public void compilesDirectDependentsWithoutClassesOfPreviousBuild() throws Exception {
+        final MavenSession session = act();
+        verify(session).setProjects(Arrays.asList(core, api));
+        Assert.assertNull(api.getProperties().getProperty(MAVEN_MAIN_SKIP));
+    }
+
+    @Test
+    public void skipsDirectDependentsWithUnchangedApi() throws Exception {
+        Property.abiStableDependents.setValue("skip");
+        final MavenSession session = act();
+        verify(session).setProjects(Collections.singletonList(core));
+    }
+
+    private MavenSession act() throws Exception {
+        final MavenSession session = mock(MavenSession.class);
+        final MavenExecutionRequest request = mock(MavenExecutionRequest.class);
+        when(session.getProjects()).thenReturn(Arrays.asList(core, api, app));
+        when(session.getCurrentProject()).thenReturn(core);
+        when(session.getGoals()).thenReturn(new ArrayList<>(Collections.singletonList("install")));
+        when(session.getRequest()).thenReturn(request);
+        final ChangedProjects changedProjects = mock(ChangedProjects.class);
+        when(changedProjects.get()).thenReturn(Collections.singleton(core));
+        final ModuleIndex moduleIndex = mock(ModuleIndex.class);
+        when(moduleIndex.getModuleCount()).thenReturn(3);
+        final AbiFingerprints abiFingerprints = mock(AbiFingerprints.class);
+        when(abiFingerprints.getUnchanged(any())).thenReturn(Collections.singleton(core));
+        Guice.createInjector(new GuiceModule(new ConsoleLogger(), session), binder -> {
+            binder.bind(ChangedProjects.class).toInstance(changedProjects);
+            binder.bind(ModuleIndex.class).toInstance(moduleIndex);
+            binder.bind(AbiFingerprints.class).toInstance(abiFingerprints);
+        }).getInstance(UnchangedProjectsRemover.class).act();
+        return session;
+    }
+
+    private MavenProject createProject(String name, MavenProject... dependencies) throws Exception {
+        final MavenProject project = new MavenProject();
+        final Model model = new Model();
+        model.setProperties(new Properties());
+        project.setModel(model);
+        project.setGroupId(name);
+        project.setArtifactId(name);
+        project.setVersion("1");
+        project.setFile(localRepoMock.getBaseCanonicalBaseFolder().toPath().resolve(name + "/pom.xml").toFile());
+        project.getBuild().setOutputDirectory(project.getBasedir().toPath().resolve("target/classes").toString());
+        for (MavenProject upstream: dependencies) {
+            final Dependency dependency = new Dependency();
+            dependency.setGroupId(upstream.getGroupId());
+            dependency.setArtifactId(upstream.getArtifactId());
+            dependency.setVersion(upstream.getVersion());
+            model.addDependency(dependency);
+        }
+        return project;
+    }
+}
@@ -0,0 +1,42 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.ToolProvider;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class AbiFingerprintsTest {
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void ignoresImplementationChanges() throws Exception {
+        final String fingerprint = compile("public class Api { public int get() { return 1; } }");
+        Assert.assertEquals(fingerprint, compile("public class Api { private int value = 2; public int get() { return value; } }"));
+        Assert.assertEquals(fingerprint, compile("public class Api { public int get() { return helper(); } private int helper() { return 3; } }"));
+    }
+
+    @Test
+    public void detectsApiChanges() throws Exception {
+        final String fingerprint = compile("public class Api { public int get() { return 1; } }");
+        Assert.assertNotEquals(fingerprint, compile("public class Api { public long get() { return 1; } }"));
+        Assert.assertNotEquals(fingerprint, compile("public class Api { public int get() { return 1; } protected void set() {} }"));
+        Assert.assertNotEquals(fingerprint, compile("public class Api { @Deprecated public int get() { return 1; } }"));
+        Assert.assertNotEquals(compile("public class Api { public static final int VALUE = 1; }"),
+                compile("public class Api { public static final int VALUE = 2; }"));
+    }
+
+    private String compile(String source) throws Exception {
+        final Path dir = temporaryFolder.newFolder().toPath();
+        final Path file = dir.resolve("Api.java");
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", dir.toString(), file.toString()));
+        Files.delete(file);
+        return AbiFingerprints.fingerprint(dir);
+    }
+}
@@ -0,0 +1,110 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.jgit.api.Git;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BuildCacheTest extends BaseRepoTest {
+
+    private static final String MODULE = "child3";
+
+    @Test
+    public void restoresStoredModule() throws Exception {
+        commitAll();
+        final MavenSession session = getSession();
+        final MavenProject project = getProject(session);
+        store(session, project);
+        final Path classes = project.getBasedir().toPath().resolve("target/classes/Built.class");
+        Files.delete(classes);
+
+        final MavenSession restoringSession = getSession();
+        final Injector injector = getInjector(restoringSession);
+        final MavenProject restoring = getProject(restoringSession);
+        Assert.assertEquals(Collections.singleton(restoring), injector.getInstance(BuildCache.class).restore(Collections.singleton(restoring)));
+        Assert.assertTrue(Files.isRegularFile(classes));
+        Assert.assertTrue(Files.isRegularFile(getLocalRepository().resolve(MODULE + "/" + MODULE + "/1/" + MODULE + "-1.jar")));
+        Assert.assertTrue(Files.isRegularFile(getLocalRepository().resolve(MODULE + "/" + MODULE + "/1/" + MODULE + "-1.pom")));
+        Assert.assertTrue(injector.getInstance(InstalledModules.class).getUnavailable(Collections.singleton(restoring)).isEmpty());
+    }
+
+    @Test
+    public void missesChangedModule() throws Exception {
+        commitAll();
+        final MavenSession session = getSession();
+        store(session, getProject(session));
+        Files.write(getProject(session).getBasedir().toPath().resolve("changed.txt"), new byte[] {1});
+        Assert.assertTrue(restore(getSession()).isEmpty());
+        commitAll();
+        Assert.assertTrue(restore(getSession()).isEmpty());
+    }
+
+    private static Set<MavenProject> restore(MavenSession session) throws Exception {
+        return getInstance(session).restore(Collections.singleton(getProject(session)));
+    }
+
+    private void store(MavenSession session, MavenProject project) throws Exception {
+        final Path target = project.getBasedir().toPath().resolve("target");
+        Files.createDirectories(target.resolve("classes"));
+        Files.write(target.resolve("classes/Built.class"), new byte[] {1});
+        final DefaultArtifact artifact = new DefaultArtifact(MODULE, MODULE, "1", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(Files.write(target.resolve(MODULE + "-1.jar"), new byte[] {2}).toFile());
+        project.setArtifact(artifact);
+        final MavenExecutionResult result = mock(MavenExecutionResult.class);
+        when(result.getBuildSummary(project)).thenReturn(new BuildSuccess(project, 0));
+        when(session.getResult()).thenReturn(result);
+        getInstance(session).store(session);
+    }
+
+    private void commitAll() throws Exception {
+        final Git git = localRepoMock.getGit();
+        Files.write(localRepoMock.getBaseCanonicalBaseFolder().toPath().resolve(".gitignore"), "target/\n".getBytes(StandardCharsets.UTF_8));
+        git.add().addFilepattern(".").call();
+        git.add().addFilepattern(".").setUpdate(true).call();
+        git.commit().setMessage("all").call();
+    }
+
+    private MavenSession getSession() throws Exception {
+        final MavenSession session = getMavenSessionMock();
+        final ArtifactRepository localRepository = mock(ArtifactRepository.class);
+        when(localRepository.getBasedir()).thenReturn(getLocalRepository().toString());
+        when(session.getLocalRepository()).thenReturn(localRepository);
+        return session;
+    }
+
+    private Path getLocalRepository() {
+        return temporaryFolder.getRoot().toPath().resolve("m2");
+    }
+
+    private static MavenProject getProject(MavenSession session) {
+        return session.getProjects().stream().filter(p -> p.getArtifactId().equals(MODULE)).findFirst().get();
+    }
+
+    private static BuildCache getInstance(MavenSession session) {
+        return getInjector(session).getInstance(BuildCache.class);
+    }
+
+    private static Injector getInjector(MavenSession session) {
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), session));
+    }
+}
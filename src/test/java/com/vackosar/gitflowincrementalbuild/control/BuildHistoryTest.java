@@ -0,0 +1,97 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BuildHistoryTest extends BaseRepoTest {
+
+    private static final List<String> MODULES = Arrays.asList("child1", "child2", "child3", "child5", "child6");
+
+    @Test
+    public void ordersCriticalPathFirst() throws Exception {
+        final Path file = getHistoryFile();
+        Files.write(file, Arrays.asList("child1:child1 10", "child2:child2 10", "child3:child3 10", "child5:child5 100", "child6:child6 1"),
+                StandardCharsets.UTF_8);
+        Assert.assertEquals(Arrays.asList("child5", "child1", "child2", "child3", "child6"), order(getSession()));
+        Assert.assertTrue(consoleOut.toString().contains("Critical path of 100 ms: child5"));
+    }
+
+    @Test
+    public void ordersLongestChainFirstWithoutHistory() throws Exception {
+        getHistoryFile();
+        Assert.assertEquals(Arrays.asList("child1", "child2", "child3", "child5", "child6"), order(getSession()));
+        Assert.assertTrue(consoleOut.toString().contains("Critical path of 3 modules, no durations recorded: child1 -> child2 -> child3"));
+    }
+
+    @Test
+    public void recordsAveragedDurations() throws Exception {
+        final Path file = getHistoryFile();
+        Files.write(file, Arrays.asList("child1:child1 100"), StandardCharsets.UTF_8);
+        final MavenSession session = getSession();
+        final MavenExecutionResult result = mock(MavenExecutionResult.class);
+        final MavenProject child1 = getProject(session, "child1");
+        final MavenProject child5 = getProject(session, "child5");
+        when(result.getBuildSummary(child1)).thenReturn(new BuildSuccess(child1, 300));
+        when(result.getBuildSummary(child5)).thenReturn(new BuildSuccess(child5, 50));
+        when(session.getResult()).thenReturn(result);
+        getInstance(session).record(session);
+        Assert.assertEquals(Arrays.asList("child1:child1 200", "child5:child5 50"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    private Path getHistoryFile() throws Exception {
+        final Path file = temporaryFolder.newFolder("history").toPath().resolve("build-history.txt");
+        Property.buildHistoryFile.setValue(file.toString());
+        return file;
+    }
+
+    private List<String> order(MavenSession session) throws Exception {
+        final List<MavenProject> projects = session.getProjects().stream()
+                .filter(p -> MODULES.contains(p.getArtifactId()))
+                .collect(Collectors.toList());
+        return getInstance(session).order(projects).stream().map(MavenProject::getArtifactId).collect(Collectors.toList());
+    }
+
+    private MavenSession getSession() throws Exception {
+        final MavenSession session = getMavenSessionMock();
+        // wrkf2 repeats coordinates of other modules, which a real reactor rejects.
+        session.getProjects().removeIf(p -> p.getBasedir().getPath().contains("wrkf2"));
+        addDependency(getProject(session, "child2"), "child1");
+        addDependency(getProject(session, "child3"), "child2");
+        return session;
+    }
+
+    private static void addDependency(MavenProject project, String artifactId) {
+        final Dependency dependency = new Dependency();
+        dependency.setGroupId(artifactId);
+        dependency.setArtifactId(artifactId);
+        dependency.setVersion("1");
+        project.getModel().addDependency(dependency);
+    }
+
+    private static MavenProject getProject(MavenSession session, String artifactId) {
+        return session.getProjects().stream().filter(p -> p.getArtifactId().equals(artifactId)).findFirst().get();
+    }
+
+    private static BuildHistory getInstance(MavenSession session) {
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), session)).getInstance(BuildHistory.class);
+    }
+}
@@ -9,9 +9,11 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -26,13 +28,132 @@ public class ChangedProjectsTest extends BaseRepoTest {
                 Paths.get("child4"),
                 Paths.get("testJarDependent")
         ));
-        final Set<Path> actual = Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock()))
+        Assert.assertEquals(expected, getChangedProjects());
+    }
+
+    @Test
+    public void listUntilBuildAllThreshold() throws Exception {
+        Property.buildAllThreshold.setValue("0.01");
+        Assert.assertEquals(1, getChangedProjects().size());
+        Assert.assertTrue(consoleOut.toString().contains("Skipping rest of diff"));
+    }
+
+    @Test
+    public void listComparingModuleTrees() throws Exception {
+        Property.compareModuleTrees.setValue(Boolean.TRUE.toString());
+        final Set<Path> expected = new HashSet<>(Arrays.asList(
+                Paths.get("child2/subchild2"),
+                Paths.get("child3"),
+                Paths.get("child4"),
+                Paths.get("testJarDependent")
+        ));
+        Assert.assertEquals(expected, getChangedProjects());
+    }
+
+    @Test
+    public void listComparingModuleTreesExcluding() throws Exception {
+        Property.compareModuleTrees.setValue(Boolean.TRUE.toString());
+        Property.excludePathRegex.setValue(".*file2.*");
+        final Set<Path> expected = new HashSet<>(Arrays.asList(
+                Paths.get("child3"),
+                Paths.get("child4"),
+                Paths.get("testJarDependent")
+        ));
+        Assert.assertEquals(expected, getChangedProjects());
+    }
+
+    @Test
+    public void listComparingModuleTreesExcludingPaths() throws Exception {
+        Property.compareModuleTrees.setValue(Boolean.TRUE.toString());
+        Property.excludePaths.setValue("**/src/resources");
+        final Set<Path> expected = new HashSet<>(Collections.singletonList(
+                Paths.get("child4")
+        ));
+        Assert.assertEquals(expected, getChangedProjects());
+    }
+
+    @Test
+    public void listAggregatingModules() throws Exception {
+        Property.aggregateModules.setValue(Boolean.TRUE.toString());
+        final Set<Path> expected = new HashSet<>(Arrays.asList(
+                Paths.get("child2/subchild2"),
+                Paths.get("child3"),
+                Paths.get("child4"),
+                Paths.get("testJarDependent")
+        ));
+        Assert.assertEquals(expected, getChangedProjects());
+        Assert.assertTrue(consoleOut.toString().contains("into 4 modules, 0 excluded"));
+    }
+
+    @Test
+    public void listAggregatingModulesExcluding() throws Exception {
+        Property.aggregateModules.setValue(Boolean.TRUE.toString());
+        Property.excludePathRegex.setValue(".*file2.*");
+        final Set<Path> expected = new HashSet<>(Arrays.asList(
+                Paths.get("child3"),
+                Paths.get("child4"),
+                Paths.get("testJarDependent")
+        ));
+        Assert.assertEquals(expected, getChangedProjects());
+        Assert.assertTrue(consoleOut.toString().contains("2 excluded"));
+    }
+
+    @Test
+    public void listUsingDiffCache() throws Exception {
+        final Path cacheDir = temporaryFolder.newFolder("diff-cache").toPath();
+        Files.createFile(cacheDir.resolve("stale.txt")).toFile().setLastModified(0);
+        Property.diffCache.setValue(Boolean.TRUE.toString());
+        Property.diffCacheDir.setValue(cacheDir.toString());
+        Property.diffCacheSize.setValue("1");
+        final Set<Path> expected = new HashSet<>(Arrays.asList(
+                Paths.get("child2/subchild2"),
+                Paths.get("child3"),
+                Paths.get("child4"),
+                Paths.get("testJarDependent")
+        ));
+        Assert.assertEquals(expected, getChangedProjects());
+        Assert.assertFalse(Files.exists(cacheDir.resolve("stale.txt")));
+        Assert.assertEquals(1, cacheDir.toFile().list().length);
+        Assert.assertEquals(expected, getChangedProjects());
+        Assert.assertTrue(consoleOut.toString().contains("Using cached changed modules"));
+    }
+
+    @Test
+    public void evictsDiffCacheOverByteLimit() throws Exception {
+        final Path cacheDir = temporaryFolder.newFolder("diff-cache").toPath();
+        Files.write(cacheDir.resolve("large.txt"), new byte[1024]).toFile().setLastModified(0);
+        Property.diffCache.setValue(Boolean.TRUE.toString());
+        Property.diffCacheDir.setValue(cacheDir.toString());
+        Property.diffCacheBytes.setValue("512");
+        getChangedProjects();
+        Assert.assertFalse(Files.exists(cacheDir.resolve("large.txt")));
+        Assert.assertEquals(1, cacheDir.toFile().list().length);
+    }
+
+    @Test
+    public void classifiesTestOnlyChanges() throws Exception {
+        Property.isolateTestChanges.setValue(Boolean.TRUE.toString());
+        final Path test = localRepoMock.getBaseCanonicalBaseFolder().toPath().resolve("parent/child1/src/test/java/Child1Test.java");
+        Files.createDirectories(test.getParent());
+        Files.write(test, "class Child1Test {}".getBytes());
+        localRepoMock.getGit().add().addFilepattern("parent/child1/src/test/java/Child1Test.java").call();
+        localRepoMock.getGit().commit().setMessage("Add test.").call();
+        final ChangedProjects changedProjects = Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock()))
+                .getInstance(ChangedProjects.class);
+        final Set<MavenProject> changed = changedProjects.get();
+        final Set<String> testOnly = changed.stream().filter(changedProjects::isTestOnly)
+                .map(MavenProject::getArtifactId).collect(Collectors.toSet());
+        Assert.assertTrue(changed.size() > 1);
+        Assert.assertEquals(Collections.singleton("child1"), testOnly);
+    }
+
+    private Set<Path> getChangedProjects() throws Exception {
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock()))
                 .getInstance(ChangedProjects.class).get().stream()
                 .map(MavenProject::getBasedir)
                     .map(File::toPath)
                     .map(localRepoMock.getBaseCanonicalBaseFolder().toPath().resolve("parent")::relativize)
                 .collect(Collectors.toSet());
-        Assert.assertEquals(expected, actual);
     }
 
 }
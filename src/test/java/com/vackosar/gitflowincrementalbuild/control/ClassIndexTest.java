@@ -0,0 +1,53 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class ClassIndexTest extends BaseRepoTest {
+
+    private static final String PACKAGE = "com/vackosar/gitflowincrementalbuild/control/";
+
+    @Test
+    public void indexesReferences() throws Exception {
+        final Map<String, Set<String>> index = getInstance().get(Paths.get("target/classes"), getCacheFile());
+        final Set<String> references = index.get(PACKAGE + "ChangedProjects");
+        Assert.assertTrue(references.contains(PACKAGE + "DifferentFiles"));
+        Assert.assertTrue(references.contains("org/apache/maven/project/MavenProject"));
+        Assert.assertFalse(references.contains(PACKAGE + "ChangedProjects"));
+        Assert.assertTrue(index.get(PACKAGE + "Stages").contains("org/eclipse/jgit/api/errors/GitAPIException"));
+        Assert.assertFalse(index.keySet().stream().anyMatch(name -> name.contains("$")));
+    }
+
+    @Test
+    public void reusesCachedClasses() throws Exception {
+        final Path cacheFile = getCacheFile();
+        getInstance().get(Paths.get("target/classes"), cacheFile);
+        final List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8).stream()
+                .map(line -> line.replace(" " + PACKAGE + "DifferentFiles", " cached/Reference"))
+                .collect(Collectors.toList());
+        Files.write(cacheFile, lines, StandardCharsets.UTF_8);
+        final Map<String, Set<String>> index = getInstance().get(Paths.get("target/classes"), cacheFile);
+        Assert.assertTrue(index.get(PACKAGE + "ChangedProjects").contains("cached/Reference"));
+    }
+
+    private Path getCacheFile() {
+        return temporaryFolder.getRoot().toPath().resolve("target/gib-class-index-classes");
+    }
+
+    private ClassIndex getInstance() throws Exception {
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock())).getInstance(ClassIndex.class);
+    }
+}
@@ -0,0 +1,93 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DependencyGraphTest {
+
+    private MavenProject parent;
+    private MavenProject core;
+    private MavenProject api;
+    private MavenProject app;
+    private MavenProject other;
+    private DependencyGraph graph;
+
+    @Before
+    public void before() {
+        parent = createProject("parent");
+        core = createProject("core");
+        api = createProject("api", core);
+        app = createProject("app", api);
+        other = createProject("other");
+        other.setParent(parent);
+        final List<MavenProject> projects = Arrays.asList(parent, core, api, app, other);
+        final MavenSession mavenSession = mock(MavenSession.class);
+        when(mavenSession.getProjects()).thenReturn(projects);
+        final MavenExecutionRequest request = mock(MavenExecutionRequest.class);
+        when(mavenSession.getRequest()).thenReturn(request);
+        graph = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(MavenSession.class).toInstance(mavenSession);
+                bind(Logger.class).toInstance(new ConsoleLogger());
+            }
+        }).getInstance(DependencyGraph.class);
+    }
+
+    @Test
+    public void dependents() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList(core, api, app)), graph.getAllDependents(Collections.singleton(core)));
+    }
+
+    @Test
+    public void dependentsIncludeChildren() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList(parent, other)), graph.getAllDependents(Collections.singleton(parent)));
+    }
+
+    @Test
+    public void dependencies() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList(core, api, app)), graph.getAllDependencies(Collections.singleton(app)));
+    }
+
+    @Test
+    public void dependenciesExcludeParent() {
+        Assert.assertEquals(Collections.singleton(other), graph.getAllDependencies(Collections.singleton(other)));
+    }
+
+    private static MavenProject createProject(String name, MavenProject... dependencies) {
+        MavenProject project = new MavenProject();
+        Model model = new Model();
+        model.setProperties(new Properties());
+        project.setModel(model);
+        project.setGroupId(name);
+        project.setArtifactId(name);
+        project.setVersion("1");
+        for (MavenProject upstream: dependencies) {
+            Dependency dependency = new Dependency();
+            dependency.setGroupId(upstream.getGroupId());
+            dependency.setArtifactId(upstream.getArtifactId());
+            dependency.setVersion(upstream.getVersion());
+            model.addDependency(dependency);
+        }
+        return project;
+    }
+}
@@ -16,6 +16,10 @@ import org.codehaus.plexus.logging.console.ConsoleLoggerManager;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -28,8 +32,10 @@ import org.slf4j.impl.StaticLoggerBinder;
 
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -77,6 +83,39 @@ public class DifferentFilesTest extends BaseRepoTest {
         Assert.assertTrue(getInstance(temporaryFolder.getRoot().toPath()).get().stream().anyMatch(p -> p.toString().contains("file5")));
     }
 
+    @Test
+    public void listIncludingUncommittedInSinglePass() throws Exception {
+        getLocalRepoMock().getGit().add().addFilepattern(".").call();
+        Files.write(workDir.resolve("parent/child1/pom.xml"), "modified".getBytes(), StandardOpenOption.APPEND);
+        Property.uncommited.setValue(Boolean.TRUE.toString());
+        final Set<Path> expected = getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        Assert.assertTrue(expected.contains(workDir.resolve("parent/child1/pom.xml")));
+        moduleFacade.close();
+        Property.singlePassDiff.setValue(Boolean.TRUE.toString());
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+    }
+
+    @Test
+    public void listIncludingUncommittedWithNativeGit() throws Exception {
+        getLocalRepoMock().getGit().add().addFilepattern(".").call();
+        Files.write(workDir.resolve("parent/child1/pom.xml"), "modified".getBytes(), StandardOpenOption.APPEND);
+        Property.uncommited.setValue(Boolean.TRUE.toString());
+        final Set<Path> expected = getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        Assert.assertTrue(expected.contains(workDir.resolve("parent/child1/pom.xml")));
+        moduleFacade.close();
+        Property.gitBackend.setValue("native");
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+        Assert.assertFalse(consoleOut.toString().contains("Falling back to JGit"));
+    }
+
+    @Test
+    public void listWithMissingNativeGit() throws Exception {
+        Property.gitBackend.setValue("native");
+        Property.gitExecutable.setValue("missing-git-executable");
+        Assert.assertTrue(getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get().contains(workDir.resolve("parent/child4/pom.xml")));
+        Assert.assertTrue(consoleOut.toString().contains("Falling back to JGit"));
+    }
+
     @Test
     public void listWithCheckout() throws Exception {
         getLocalRepoMock().getGit().reset().setRef(HEAD).setMode(ResetCommand.ResetType.HARD).call();
@@ -85,6 +124,20 @@ public class DifferentFilesTest extends BaseRepoTest {
         Assert.assertTrue(consoleOut.toString().contains("Checking out base branch refs/heads/feature/2"));
     }
 
+    @Test
+    public void listWithoutCheckout() throws Exception {
+        workDir.resolve("file5").toFile().createNewFile();
+        final String branch = getLocalRepoMock().getGit().getRepository().getFullBranch();
+        Property.baseBranch.setValue(REFS_HEADS_FEATURE_2);
+        Property.checkoutBaseBranch.setValue(Boolean.FALSE.toString());
+        Property.uncommited.setValue(Boolean.TRUE.toString());
+        final Set<Path> paths = getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        Assert.assertTrue(paths.contains(workDir.resolve("parent/feature2-only-file.txt")));
+        Assert.assertFalse(paths.contains(workDir.resolve("file5")));
+        Assert.assertFalse(consoleOut.toString().contains("Checking out base branch"));
+        Assert.assertEquals(branch, getLocalRepoMock().getGit().getRepository().getFullBranch());
+    }
+
     @Test
     public void list() throws Exception {
         final DifferentFiles differentFiles = getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath());
@@ -98,6 +151,32 @@ public class DifferentFilesTest extends BaseRepoTest {
         Assert.assertEquals(expected, differentFiles.get());
     }
 
+    @Test
+    public void listInParallel() throws Exception {
+        final Set<Path> expected = getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        moduleFacade.close();
+        Property.diffParallelism.setValue("4");
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+        moduleFacade.close();
+        Property.diffParallelism.setValue("1");
+        Property.gitBackend.setValue("native");
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+    }
+
+    @Test
+    public void listWithTunedPackAccess() throws Exception {
+        final Set<Path> expected = getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        moduleFacade.close();
+        Property.packedGitMMAP.setValue(Boolean.TRUE.toString());
+        Property.packedGitWindowSize.setValue("64k");
+        Property.deltaBaseCacheLimit.setValue("16m");
+        try {
+            Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+        } finally {
+            new WindowCacheConfig().install();
+        }
+    }
+
     @Test
     public void listExcluding() throws Exception {
         Property.excludePathRegex.setValue(".*file2.*");
@@ -110,6 +189,33 @@ public class DifferentFilesTest extends BaseRepoTest {
         Assert.assertEquals(expected, differentFiles.get());
     }
 
+    @Test
+    public void listExcludingPaths() throws Exception {
+        Property.excludePaths.setValue("**/subchild2, parent/child3/src");
+        final Set<Path> expected = new HashSet<>(Arrays.asList(
+                Paths.get(workDir + "/parent/child4/pom.xml"),
+                Paths.get(workDir + "/parent/testJarDependent/src/resources/file5")
+        ));
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+        moduleFacade.close();
+        Property.diffParallelism.setValue("4");
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+    }
+
+    @Test
+    public void listIncludingPaths() throws Exception {
+        Property.includePaths.setValue("**/resources/file?");
+        Property.excludePaths.setValue("parent/testJarDependent");
+        final Set<Path> expected = new HashSet<>(Arrays.asList(
+                Paths.get(workDir + "/parent/child2/subchild2/src/resources/file2"),
+                Paths.get(workDir + "/parent/child3/src/resources/file1")
+        ));
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+        moduleFacade.close();
+        Property.gitBackend.setValue("native");
+        Assert.assertEquals(expected, getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get());
+    }
+
     @Test
     public void listInSubdir() throws Exception {
         Path workDir = localRepoMock.getBaseCanonicalBaseFolder().toPath().resolve("parent/child2");
@@ -136,6 +242,35 @@ public class DifferentFilesTest extends BaseRepoTest {
         Assert.assertTrue(consoleOut.toString().contains("59dc82fa887d9ca82a0d3d1790c6d767e738e71a"));
     }
 
+    @Test
+    public void listComparedToIndexedMergeBase() throws Exception {
+        getLocalRepoMock().getGit().reset().setRef(HEAD).setMode(ResetCommand.ResetType.HARD).call();
+        getLocalRepoMock().getGit().checkout().setName(REFS_HEADS_FEATURE_2).call();
+        getLocalRepoMock().getGit().reset().setRef(HEAD).setMode(ResetCommand.ResetType.HARD).call();
+        Property.baseBranch.setValue(REFS_HEADS_FEATURE_2);
+        Property.compareToMergeBase.setValue("true");
+        Property.mergeBaseIndex.setValue("true");
+        final Path indexDir = workDir.resolve(".git/gib/merge-base-index");
+        Assert.assertTrue(getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get().contains(workDir.resolve("parent/feature2-only-file.txt")));
+        Assert.assertTrue(consoleOut.toString().contains("59dc82fa887d9ca82a0d3d1790c6d767e738e71a"));
+        Assert.assertTrue(Files.readAllLines(indexDir.resolve("merge-bases")).get(0).endsWith("59dc82fa887d9ca82a0d3d1790c6d767e738e71a"));
+        Assert.assertTrue(Files.size(indexDir.resolve("generations")) > 0);
+        moduleFacade.close();
+        Assert.assertTrue(getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get().contains(workDir.resolve("parent/feature2-only-file.txt")));
+    }
+
+    @Test
+    public void listComparedToMergeBaseWithNativeGit() throws Exception {
+        getLocalRepoMock().getGit().reset().setRef(HEAD).setMode(ResetCommand.ResetType.HARD).call();
+        getLocalRepoMock().getGit().checkout().setName(REFS_HEADS_FEATURE_2).call();
+        getLocalRepoMock().getGit().reset().setRef(HEAD).setMode(ResetCommand.ResetType.HARD).call();
+        Property.baseBranch.setValue(REFS_HEADS_FEATURE_2);
+        Property.compareToMergeBase.setValue("true");
+        Property.gitBackend.setValue("native");
+        Assert.assertTrue(getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get().contains(workDir.resolve("parent/feature2-only-file.txt")));
+        Assert.assertTrue(consoleOut.toString().contains("59dc82fa887d9ca82a0d3d1790c6d767e738e71a"));
+    }
+
     @Test
     public void fetch() throws Exception {
         Git remoteGit = localRepoMock.getRemoteRepo().getGit();
@@ -154,6 +289,60 @@ public class DifferentFilesTest extends BaseRepoTest {
         Assert.assertEquals(FETCH_FILE, localGit.log().setMaxCount(1).call().iterator().next().getFullMessage());
     }
 
+    @Test
+    public void fetchWithNativeGit() throws Exception {
+        Git remoteGit = localRepoMock.getRemoteRepo().getGit();
+        remoteGit.reset().setMode(ResetCommand.ResetType.HARD).call();
+        remoteGit.checkout().setName(DEVELOP).call();
+        remoteGit.getRepository().getDirectory().toPath().resolve(FETCH_FILE).toFile().createNewFile();
+        remoteGit.add().addFilepattern(".").call();
+        remoteGit.commit().setMessage(FETCH_FILE).call();
+        Property.fetchReferenceBranch.setValue(Boolean.TRUE.toString());
+        Property.referenceBranch.setValue(REMOTE_DEVELOP);
+        Property.gitBackend.setValue("native");
+        getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        Git localGit = localRepoMock.getGit();
+        localGit.reset().setMode(ResetCommand.ResetType.HARD).call();
+        localGit.checkout().setName(REMOTE_DEVELOP).call();
+        Assert.assertEquals(FETCH_FILE, localGit.log().setMaxCount(1).call().iterator().next().getFullMessage());
+    }
+
+    @Test
+    public void fetchConditionally() throws Exception {
+        Git remoteGit = localRepoMock.getRemoteRepo().getGit();
+        remoteGit.reset().setMode(ResetCommand.ResetType.HARD).call();
+        remoteGit.checkout().setName(DEVELOP).call();
+        remoteGit.getRepository().getDirectory().toPath().resolve(FETCH_FILE).toFile().createNewFile();
+        remoteGit.add().addFilepattern(".").call();
+        remoteGit.commit().setMessage(FETCH_FILE).call();
+        Property.fetchReferenceBranch.setValue(Boolean.TRUE.toString());
+        Property.referenceBranch.setValue(REMOTE_DEVELOP);
+        Property.conditionalFetch.setValue(Boolean.TRUE.toString());
+        getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        Git localGit = localRepoMock.getGit();
+        Assert.assertEquals(FETCH_FILE, localGit.log().add(localGit.getRepository().resolve(REMOTE_DEVELOP)).setMaxCount(1).call().iterator().next().getFullMessage());
+        Assert.assertFalse(consoleOut.toString().contains("Skipping fetch"));
+        moduleFacade.close();
+        getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        Assert.assertTrue(consoleOut.toString().contains("Branch " + REMOTE_DEVELOP + " is up to date with remote. Skipping fetch."));
+    }
+
+    @Test
+    public void fetchConditionallyPresentCommit() throws Exception {
+        Repository localRepository = localRepoMock.getGit().getRepository();
+        final ObjectId remoteHead = localRepoMock.getRemoteRepo().getGit().getRepository().resolve(DEVELOP);
+        Assert.assertTrue(localRepository.hasObject(remoteHead));
+        final RefUpdate update = localRepository.updateRef(REMOTE_DEVELOP);
+        update.setNewObjectId(localRepository.resolve(remoteHead.name() + "~1"));
+        update.forceUpdate();
+        Property.fetchReferenceBranch.setValue(Boolean.TRUE.toString());
+        Property.referenceBranch.setValue(REMOTE_DEVELOP);
+        Property.conditionalFetch.setValue(Boolean.TRUE.toString());
+        getInstance(localRepoMock.getBaseCanonicalBaseFolder().toPath()).get();
+        Assert.assertTrue(consoleOut.toString().contains("updated to locally present remote head " + remoteHead.name()));
+        Assert.assertEquals(remoteHead, localRepository.resolve(REMOTE_DEVELOP));
+    }
+
     @Test
     public void fetchNonExistent() throws Exception {
         Git remoteGit = localRepoMock.getRemoteRepo().getGit();
@@ -198,6 +387,10 @@ public class DifferentFilesTest extends BaseRepoTest {
             return git;
         }
 
+        @Singleton @Provides public MavenSession provideMavenSession() throws Exception {
+            return MavenSessionMock.get(workDir);
+        }
+
         @Singleton @Provides public Configuration configuration() throws Exception {
             MavenSession mavenSession = MavenSessionMock.get(workDir);
             return new Configuration(mavenSession);
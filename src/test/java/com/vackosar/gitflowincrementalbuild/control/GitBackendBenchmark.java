@@ -0,0 +1,121 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Provides;
+import com.vackosar.gitflowincrementalbuild.boundary.Configuration;
+import com.vackosar.gitflowincrementalbuild.mocks.MavenSessionMock;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLoggerManager;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.impl.StaticLoggerBinder;
+
+import javax.inject.Singleton;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the JGit and native git backends and the parallel tree diff on a synthetic repository. Not run by the build, start it manually with
+ * optional arguments: modules, files per module, iterations.
+ */
+public class GitBackendBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int modules = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final int files = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        new StaticLoggerBinder(new ConsoleLoggerManager().getLoggerForComponent("Benchmark"));
+        final Path dir = Files.createTempDirectory("gib-benchmark");
+        try (Git git = Git.init().setDirectory(dir.toFile()).call()) {
+            final RevCommit base = generate(git, dir, modules, files);
+            final RevCommit reference = modify(git, dir, modules);
+            final Injector injector = Guice.createInjector(new BenchmarkModule(git, dir));
+            final List<GitBackend> backends = new ArrayList<>();
+            backends.add(injector.getInstance(JGitBackend.class));
+            if (injector.getInstance(NativeGitBackend.class).isAvailable()) {
+                backends.add(injector.getInstance(NativeGitBackend.class));
+            }
+            System.out.println("Repository of " + modules * files + " files in " + modules + " modules: " + dir);
+            for (GitBackend backend: backends) {
+                final String name = backend.getClass().getSimpleName();
+                measure(name + " diff", iterations, () -> backend.diff(base.getTree(), reference.getTree(), p -> true));
+                measure(name + " status", iterations, () -> backend.status(p -> {}));
+                measure(name + " merge-base", iterations, () -> backend.getMergeBase(base, reference));
+            }
+            final ParallelTreeDiff parallelTreeDiff = injector.getInstance(ParallelTreeDiff.class);
+            final int parallelism = Runtime.getRuntime().availableProcessors();
+            measure(ParallelTreeDiff.class.getSimpleName() + " diff on " + parallelism + " threads", iterations,
+                    () -> parallelTreeDiff.get(git.getRepository(), base.getTree(), reference.getTree(), TreeFilter.ANY_DIFF, parallelism, p -> true));
+        }
+    }
+
+    private static RevCommit generate(Git git, Path dir, int modules, int files) throws Exception {
+        Files.write(dir.resolve("pom.xml"), "<project/>".getBytes());
+        for (int m = 0; m < modules; m++) {
+            final Path module = Files.createDirectories(dir.resolve("module" + m + "/src/main/java"));
+            for (int f = 0; f < files; f++) {
+                Files.write(module.resolve("File" + f + ".java"), ("class File" + f + " {}").getBytes());
+            }
+        }
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage("base").call();
+    }
+
+    private static RevCommit modify(Git git, Path dir, int modules) throws Exception {
+        for (int m = 0; m < modules; m += 10) {
+            Files.write(dir.resolve("module" + m + "/src/main/java/File0.java"), "// changed".getBytes(), StandardOpenOption.APPEND);
+        }
+        git.add().addFilepattern(".").call();
+        final RevCommit reference = git.commit().setMessage("reference").call();
+        Files.write(dir.resolve("module1/src/main/java/File0.java"), "// uncommitted".getBytes(), StandardOpenOption.APPEND);
+        return reference;
+    }
+
+    private static void measure(String label, int iterations, Operation operation) throws Exception {
+        final List<Long> times = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            final long start = System.nanoTime();
+            operation.run();
+            times.add((System.nanoTime() - start) / 1_000_000);
+        }
+        Collections.sort(times);
+        System.out.println(label + ": median " + times.get(times.size() / 2)
+                + " ms, min " + times.get(0) + " ms, max " + times.get(times.size() - 1) + " ms");
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private static class BenchmarkModule extends AbstractModule {
+        private final Git git;
+        private final Path dir;
+
+        private BenchmarkModule(Git git, Path dir) {
+            this.git = git;
+            this.dir = dir;
+        }
+
+        @Singleton @Provides public Git provideGit() {
+            return git;
+        }
+
+        @Singleton @Provides public Logger provideLogger() {
+            return new ConsoleLoggerManager().getLoggerForComponent("Benchmark");
+        }
+
+        @Singleton @Provides public Configuration provideConfiguration() throws Exception {
+            return new Configuration(MavenSessionMock.get(dir));
+        }
+
+        @Override
+        protected void configure() {}
+    }
+}
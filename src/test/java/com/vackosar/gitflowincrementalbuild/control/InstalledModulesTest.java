@@ -0,0 +1,140 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.jgit.api.Git;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InstalledModulesTest extends BaseRepoTest {
+
+    private static final String MODULE = "child3";
+
+    @Test
+    public void upToDateWhenInstalledFromSameSources() throws Exception {
+        Property.skipInstalledUpstream.setValue(Boolean.TRUE.toString());
+        commitAll();
+        install();
+        Assert.assertTrue(getUnavailable(getSession()).isEmpty());
+    }
+
+    @Test
+    public void staleWhenInstalledFromOtherSources() throws Exception {
+        Property.skipInstalledUpstream.setValue(Boolean.TRUE.toString());
+        commitAll();
+        install();
+        Files.write(getProject(getSession()).getBasedir().toPath().resolve("changed.txt"), new byte[] {1});
+        commitAll();
+        Assert.assertEquals(1, getUnavailable(getSession()).size());
+    }
+
+    @Test
+    public void staleWhenInstalledAgainWithoutRecording() throws Exception {
+        Property.skipInstalledUpstream.setValue(Boolean.TRUE.toString());
+        commitAll();
+        install();
+        final Path artifact = writeArtifact(new byte[] {1, 2});
+        Files.setLastModifiedTime(artifact, FileTime.fromMillis(Files.getLastModifiedTime(artifact).toMillis() + 1000));
+        Assert.assertEquals(1, getUnavailable(getSession()).size());
+    }
+
+    @Test
+    public void sourceKeyRemovedWhenInstallFails() throws Exception {
+        Property.skipInstalledUpstream.setValue(Boolean.TRUE.toString());
+        commitAll();
+        install();
+        final Path fingerprint = getLocalRepository().resolve(MODULE + "/" + MODULE + "/1/gib-source-key.txt");
+        Assert.assertTrue(Files.isRegularFile(fingerprint));
+        final MavenSession session = getSession();
+        when(session.getGoals()).thenReturn(Collections.singletonList("install"));
+        final MavenExecutionResult result = mock(MavenExecutionResult.class);
+        when(session.getResult()).thenReturn(result);
+        getInstance(session).record(session);
+        Assert.assertFalse(Files.exists(fingerprint));
+    }
+
+    @Test
+    public void staleWhenInstalledWithoutSourceKey() throws Exception {
+        Property.skipInstalledUpstream.setValue(Boolean.TRUE.toString());
+        commitAll();
+        writeArtifact();
+        Assert.assertEquals(1, getUnavailable(getSession()).size());
+        Property.skipInstalledUpstream.setValue(Boolean.FALSE.toString());
+        Assert.assertTrue(getUnavailable(getSession()).isEmpty());
+    }
+
+    @Test
+    public void missingWhenNotInstalled() throws Exception {
+        commitAll();
+        Assert.assertEquals(1, getUnavailable(getSession()).size());
+    }
+
+    private void install() throws Exception {
+        writeArtifact();
+        final MavenSession session = getSession();
+        when(session.getGoals()).thenReturn(Collections.singletonList("install"));
+        final MavenProject project = getProject(session);
+        final MavenExecutionResult result = mock(MavenExecutionResult.class);
+        when(result.getBuildSummary(project)).thenReturn(new BuildSuccess(project, 0));
+        when(session.getResult()).thenReturn(result);
+        getInstance(session).record(session);
+    }
+
+    private void writeArtifact() throws Exception {
+        writeArtifact(new byte[] {1});
+    }
+
+    private Path writeArtifact(byte[] content) throws Exception {
+        final Path dir = Files.createDirectories(getLocalRepository().resolve(MODULE + "/" + MODULE + "/1"));
+        return Files.write(dir.resolve(MODULE + "-1.jar"), content);
+    }
+
+    private Set<MavenProject> getUnavailable(MavenSession session) throws Exception {
+        return getInstance(session).getUnavailable(Collections.singleton(getProject(session)));
+    }
+
+    private void commitAll() throws Exception {
+        final Git git = localRepoMock.getGit();
+        Files.write(localRepoMock.getBaseCanonicalBaseFolder().toPath().resolve(".gitignore"), "target/\n".getBytes(StandardCharsets.UTF_8));
+        git.add().addFilepattern(".").call();
+        git.add().addFilepattern(".").setUpdate(true).call();
+        git.commit().setMessage("all").call();
+    }
+
+    private MavenSession getSession() throws Exception {
+        final MavenSession session = getMavenSessionMock();
+        final ArtifactRepository localRepository = mock(ArtifactRepository.class);
+        when(localRepository.getBasedir()).thenReturn(getLocalRepository().toString());
+        when(session.getLocalRepository()).thenReturn(localRepository);
+        return session;
+    }
+
+    private Path getLocalRepository() {
+        return temporaryFolder.getRoot().toPath().resolve("m2");
+    }
+
+    private static MavenProject getProject(MavenSession session) {
+        return session.getProjects().stream().filter(p -> p.getArtifactId().equals(MODULE)).findFirst().get();
+    }
+
+    private static InstalledModules getInstance(MavenSession session) {
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), session)).getInstance(InstalledModules.class);
+    }
+}
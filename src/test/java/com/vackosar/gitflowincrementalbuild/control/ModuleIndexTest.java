@@ -0,0 +1,32 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+public class ModuleIndexTest extends BaseRepoTest {
+
+    @Test
+    public void findsDeepestModule() throws Exception {
+        final Path parent = localRepoMock.getBaseCanonicalBaseFolder().toPath().resolve("parent");
+        final Path nested = parent.resolve("child2/subchild2/src/resources/file2");
+        final Path direct = parent.resolve("child3/pom.xml");
+        final Path outside = parent.getParent().resolve("README");
+        final Map<Path, MavenProject> projects = getInstance().findProjects(Arrays.asList(nested, direct, outside));
+        Assert.assertEquals("subchild2", projects.get(nested).getArtifactId());
+        Assert.assertEquals("child3", projects.get(direct).getArtifactId());
+        Assert.assertFalse(projects.containsKey(outside));
+    }
+
+    private ModuleIndex getInstance() throws Exception {
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock())).getInstance(ModuleIndex.class);
+    }
+}
@@ -0,0 +1,115 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import org.codehaus.plexus.logging.console.ConsoleLoggerManager;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.impl.StaticLoggerBinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares a walk per step with a shared object reader and walk, under default and tuned pack window settings, on an
+ * existing repository. Not run by the build, start it manually with arguments: git dir, base revision, reference
+ * revision, iterations. Point it at a repository with a large pack to see the effect of the window settings.
+ */
+public class PackAccessBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new StaticLoggerBinder(new ConsoleLoggerManager().getLoggerForComponent("Benchmark"));
+        final File gitDir = new File(args.length > 0 ? args[0] : ".git");
+        final String base = args.length > 1 ? args[1] : "HEAD~10";
+        final String reference = args.length > 2 ? args[2] : "HEAD";
+        final int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        final WindowCacheConfig tuned = new WindowCacheConfig();
+        tuned.setPackedGitMMAP(true);
+        tuned.setPackedGitWindowSize(64 * 1024);
+        tuned.setPackedGitLimit(256 * 1024 * 1024);
+        tuned.setDeltaBaseCacheLimit(64 * 1024 * 1024);
+        for (WindowCacheConfig config: new WindowCacheConfig[] {new WindowCacheConfig(), tuned}) {
+            config.install();
+            final String settings = "window " + config.getPackedGitWindowSize() + ", mmap " + config.isPackedGitMMAP();
+            try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).build()) {
+                measure("walk per step, " + settings, iterations, () -> walkPerStep(repository, base, reference));
+            }
+            try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).build()) {
+                measure("shared reader, " + settings, iterations, () -> sharedReader(repository, base, reference));
+            }
+        }
+        new WindowCacheConfig().install();
+    }
+
+    private static int walkPerStep(Repository repository, String base, String reference) throws IOException {
+        final RevCommit baseCommit;
+        try (RevWalk walk = new RevWalk(repository)) {
+            baseCommit = walk.parseCommit(repository.resolve(base));
+        }
+        final RevCommit referenceCommit;
+        try (RevWalk walk = new RevWalk(repository)) {
+            referenceCommit = walk.parseCommit(repository.resolve(reference));
+        }
+        final RevCommit mergeBase;
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.lookupCommit(baseCommit));
+            walk.markStart(walk.lookupCommit(referenceCommit));
+            mergeBase = walk.next();
+        }
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            return diff(treeWalk, baseCommit, mergeBase);
+        }
+    }
+
+    private static int sharedReader(Repository repository, String base, String reference) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+            final RevCommit baseCommit = walk.parseCommit(repository.resolve(base));
+            final RevCommit referenceCommit = walk.parseCommit(repository.resolve(reference));
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(baseCommit);
+            walk.markStart(referenceCommit);
+            final RevCommit mergeBase = walk.next();
+            try (TreeWalk treeWalk = new TreeWalk(repository, reader)) {
+                return diff(treeWalk, baseCommit, mergeBase);
+            }
+        }
+    }
+
+    private static int diff(TreeWalk treeWalk, RevCommit base, RevCommit reference) throws IOException {
+        treeWalk.addTree(base.getTree());
+        treeWalk.addTree(reference.getTree());
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        treeWalk.setRecursive(true);
+        int count = 0;
+        while (treeWalk.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void measure(String label, int iterations, Operation operation) throws Exception {
+        final List<Long> times = new ArrayList<>();
+        int result = 0;
+        for (int i = 0; i < iterations; i++) {
+            final long start = System.nanoTime();
+            result = operation.run();
+            times.add((System.nanoTime() - start) / 1_000_000);
+        }
+        Collections.sort(times);
+        System.out.println(label + ": " + result + " paths, median " + times.get(times.size() / 2)
+                + " ms, min " + times.get(0) + " ms, max " + times.get(times.size() - 1) + " ms");
+    }
+
+    private interface Operation {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,42 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class StageEventTest extends BaseRepoTest {
+
+    private static final String EVENT = "com.vackosar.gitflowincrementalbuild.Stage";
+
+    @Test
+    public void emitsEventPerStage() throws Exception {
+        final Stages stages = Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock())).getInstance(Stages.class);
+        final Path file = temporaryFolder.getRoot().toPath().resolve("stages.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT);
+            recording.start();
+            stages.run("recorded", () -> {
+                stages.count("files", 3);
+                return "";
+            });
+            recording.stop();
+            recording.dump(file);
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals(EVENT))
+                .collect(Collectors.toList());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("recorded", events.get(0).getString("stage"));
+        Assert.assertTrue(events.get(0).getString("counts").contains("files"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+public class StagesTest extends BaseRepoTest {
+
+    @Test
+    public void runsStageAfterDependencies() throws Exception {
+        final Stages stages = getInstance();
+        final CompletableFuture<String> first = stages.submit("first", () -> sleep(20) + "first");
+        final CompletableFuture<String> second = stages.submit("second", () -> first.getNow(null) + " second", first);
+        Assert.assertEquals("first second", stages.run("third", () -> Stages.join(second), second));
+    }
+
+    @Test
+    public void rethrowsFailureOfDependency() throws Exception {
+        final Stages stages = getInstance();
+        final CompletableFuture<String> failing = stages.submit("failing", () -> {
+            throw new IOException("FAIL !!!");
+        });
+        final CompletableFuture<String> dependent = stages.submit("dependent", () -> "never", failing);
+        try {
+            Stages.join(dependent);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("FAIL !!!", e.getMessage());
+        }
+    }
+
+    @Test
+    public void reportsCriticalPath() throws Exception {
+        final Stages stages = getInstance();
+        final CompletableFuture<String> slow = stages.submit("slow", () -> sleep(100));
+        final CompletableFuture<String> fast = stages.submit("fast", () -> sleep(10));
+        stages.run("last", () -> sleep(10), slow, fast);
+        stages.report();
+        Assert.assertTrue(consoleOut.toString().contains("ms: slow > last."));
+    }
+
+    @Test
+    public void writesReportWithCounts() throws Exception {
+        final Stages stages = getInstance();
+        final CompletableFuture<String> counting = stages.submit("counting", () -> {
+            stages.count("files", 2);
+            stages.count("files", 3);
+            return "";
+        });
+        stages.run("last", () -> "", counting);
+        stages.count("modules", 7);
+        stages.report();
+        final Path report = temporaryFolder.getRoot().toPath().resolve("target/stages.json");
+        stages.write(report);
+        final String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        Assert.assertTrue(json.contains("\"criticalPath\": [\"counting\", \"last\"]"));
+        Assert.assertTrue(json.contains("\"counts\": {\"modules\": 7}"));
+        Assert.assertTrue(json.contains("{\"name\": \"counting\""));
+        Assert.assertTrue(json.contains("\"counts\": {\"files\": 5}}"));
+    }
+
+    private static String sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+            return "";
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private Stages getInstance() throws Exception {
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock())).getInstance(Stages.class);
+    }
+}
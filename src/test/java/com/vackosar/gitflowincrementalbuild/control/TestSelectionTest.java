@@ -0,0 +1,92 @@
+package com.vackosar.gitflowincrementalbuild.control;
+
+import com.google.inject.Guice;
+import com.vackosar.gitflowincrementalbuild.BaseRepoTest;
+import com.vackosar.gitflowincrementalbuild.boundary.GuiceModule;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestSelectionTest extends BaseRepoTest {
+
+    private static final String PACKAGE = "com/vackosar/gitflowincrementalbuild/control/";
+
+    @Test
+    public void selectsTestsReferencingChangedClassTransitively() throws Exception {
+        final MavenProject project = createProject();
+        copy("target/classes", project, "target/classes", "ChangedProjects");
+        copy("target/test-classes", project, "target/test-classes", "StagesTest", "ChangedProjectsTest", "PropertyTest");
+        final Map<MavenProject, List<String>> selected = select(project, "src/main/java/" + PACKAGE + "Stages.java");
+        Assert.assertEquals(Arrays.asList(PACKAGE + "ChangedProjectsTest", PACKAGE + "StagesTest"), selected.get(project));
+    }
+
+    @Test
+    public void followsReferencesThroughProjectWithoutTests() throws Exception {
+        final MavenProject changed = createProject("changed");
+        final MavenProject untested = createProject("untested");
+        final MavenProject tested = createProject("tested");
+        copy("target/classes", untested, "target/classes", "ChangedProjects");
+        copy("target/test-classes", tested, "target/test-classes", "ChangedProjectsTest", "PropertyTest");
+        final Map<MavenProject, List<String>> selected = select(changed, "src/main/java/" + PACKAGE + "Stages.java",
+                Arrays.asList(changed, untested, tested));
+        Assert.assertFalse(selected.containsKey(untested));
+        Assert.assertEquals(Collections.singletonList(PACKAGE + "ChangedProjectsTest"), selected.get(tested));
+    }
+
+    @Test
+    public void selectsNothingForResourceChange() throws Exception {
+        final MavenProject project = createProject();
+        copy("target/test-classes", project, "target/test-classes", "StagesTest");
+        Assert.assertTrue(select(project, "src/main/resources/file").isEmpty());
+    }
+
+    private Map<MavenProject, List<String>> select(MavenProject project, String changedFile) throws Exception {
+        return select(project, changedFile, Collections.singleton(project));
+    }
+
+    private Map<MavenProject, List<String>> select(MavenProject project, String changedFile, Collection<MavenProject> projects) throws Exception {
+        final ChangedProjects changedProjects = mock(ChangedProjects.class);
+        final Map<MavenProject, Set<Path>> changedFiles = Collections.singletonMap(project, Collections.singleton(Paths.get(changedFile)));
+        when(changedProjects.getChangedFiles()).thenReturn(Optional.of(changedFiles));
+        return Guice.createInjector(new GuiceModule(new ConsoleLogger(), getMavenSessionMock()),
+                binder -> binder.bind(ChangedProjects.class).toInstance(changedProjects))
+                .getInstance(TestSelection.class).select(projects);
+    }
+
+    private MavenProject createProject() {
+        return createProject("selected");
+    }
+
+    private MavenProject createProject(String name) {
+        final MavenProject project = new MavenProject(new Model());
+        project.setGroupId(name);
+        project.setArtifactId(name);
+        project.setVersion("1");
+        project.setFile(temporaryFolder.getRoot().toPath().resolve(name + "/pom.xml").toFile());
+        return project;
+    }
+
+    private static void copy(String from, MavenProject project, String to, String... classes) throws Exception {
+        final Path target = project.getBasedir().toPath().resolve(to).resolve(PACKAGE);
+        Files.createDirectories(target);
+        for (String name: classes) {
+            Files.copy(Paths.get(from, PACKAGE, name + ".class"), target.resolve(name + ".class"));
+        }
+    }
+}
@@ -24,6 +24,7 @@ public class MavenSessionMock {
     public static MavenSession get(Path workDir) throws Exception {
         PomFinder finder = new PomFinder();
         Files.walkFileTree(workDir, finder);
+        finder.projects.sort(null);
         List<MavenProject> projects = finder.projects.stream().map(MavenSessionMock::createProject).collect(Collectors.toList());
 
         MavenSession mavenSession = mock(MavenSession.class);
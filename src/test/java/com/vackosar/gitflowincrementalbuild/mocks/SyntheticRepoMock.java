@@ -0,0 +1,217 @@
+package com.vackosar.gitflowincrementalbuild.mocks;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Deterministic repository of a reactor with given number of modules arranged in dependency layers. History: initial
+ * commit on master, develop moves on, feature branches off master, renames files within and across modules, rewrites
+ * all files of some modules, adds new ones and finally merges develop. Feature stays checked out, so changes against
+ * develop are exactly the feature commits.
+ */
+public class SyntheticRepoMock implements AutoCloseable {
+
+    private static final long EPOCH = 1_500_000_000_000L;
+
+    private final Path baseFolder;
+    private final int modules;
+    private final int files;
+    private final Random random;
+    private final Map<String, List<String>> dependencies = new HashMap<>();
+    private final Set<String> changed = new LinkedHashSet<>();
+    private final Git git;
+    private int commits;
+
+    /**
+     * @param modules at least 2
+     * @param files per module, at least 3
+     */
+    public SyntheticRepoMock(File baseFolder, int modules, int files, int depth, int fanOut, long seed) throws IOException, GitAPIException {
+        this.baseFolder = new File(baseFolder, "tmp/synthetic").toPath();
+        this.modules = modules;
+        this.files = files;
+        this.random = new Random(seed);
+        this.git = Git.init().setDirectory(this.baseFolder.toFile()).call();
+        createLayers(depth, fanOut);
+        createHistory();
+    }
+
+    private void createLayers(int depth, int fanOut) {
+        final List<List<String>> layers = new ArrayList<>();
+        for (int i = 0; i < modules; i++) {
+            final int layer = (int) ((long) i * depth / modules);
+            if (layers.size() <= layer) {
+                layers.add(new ArrayList<>());
+            }
+            final List<String> upstream = new ArrayList<>();
+            if (layer > 0) {
+                final List<String> below = layers.get(layer - 1);
+                for (int j = 0; j < fanOut; j++) {
+                    final String dependency = below.get(random.nextInt(below.size()));
+                    if (! upstream.contains(dependency)) {
+                        upstream.add(dependency);
+                    }
+                }
+            }
+            dependencies.put(module(i), upstream);
+            layers.get(layer).add(module(i));
+        }
+    }
+
+    private void createHistory() throws IOException, GitAPIException {
+        write(baseFolder.resolve("pom.xml"), pom("root", new ArrayList<>()));
+        for (int i = 0; i < modules; i++) {
+            write(moduleDir(i).resolve("pom.xml"), pom(module(i), dependencies.get(module(i))));
+            for (int j = 0; j < files; j++) {
+                write(source(i, j), content(i, j, 0));
+            }
+        }
+        commit("Initial commit.");
+        git.branchCreate().setName("develop").call();
+        git.checkout().setName("develop").call();
+        final int developModule = random.nextInt(modules);
+        write(source(developModule, 0), content(developModule, 0, 1));
+        commit("Develop change.");
+        git.checkout().setName("master").call();
+        git.checkout().setCreateBranch(true).setName("feature").call();
+
+        final int renamed = (developModule + 1 + random.nextInt(modules - 1)) % modules;
+        move(source(renamed, 0), moduleDir(renamed).resolve("src/main/java/Renamed.java"));
+        changed.add(module(renamed));
+        final int from = random.nextInt(modules);
+        final int to = random.nextInt(modules);
+        move(source(from, files - 1), moduleDir(to).resolve("src/main/java/Moved.java"));
+        changed.add(module(from));
+        changed.add(module(to));
+        commit("Rename files.");
+
+        for (int k = 0; k < Math.max(1, modules / 50); k++) {
+            final int rewritten = random.nextInt(modules);
+            for (int j = 1; j < files - 1; j++) {
+                write(source(rewritten, j), content(rewritten, j, 2));
+            }
+            write(moduleDir(rewritten).resolve("src/main/java/Added.java"), "class Added {}\n");
+            changed.add(module(rewritten));
+        }
+        commit("Rewrite modules.");
+
+        git.merge().include(git.getRepository().resolve("develop")).setFastForward(MergeCommand.FastForwardMode.NO_FF).setCommit(false).call();
+        commit("Merge develop.");
+    }
+
+    /**
+     * @return session of all projects, root first, with dependencies of the generated layers.
+     */
+    public MavenSession getMavenSession() throws Exception {
+        final MavenSession session = MavenSessionMock.get(baseFolder);
+        for (MavenProject project: session.getProjects()) {
+            for (String upstream: dependencies.getOrDefault(project.getArtifactId(), new ArrayList<>())) {
+                final Dependency dependency = new Dependency();
+                dependency.setGroupId(upstream);
+                dependency.setArtifactId(upstream);
+                dependency.setVersion("1");
+                project.getModel().addDependency(dependency);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * @return artifact ids of modules changed on feature.
+     */
+    public Set<String> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return artifact ids of changed modules and of all modules transitively depending on them.
+     */
+    public Set<String> getImpacted() {
+        final Map<String, List<String>> dependents = new HashMap<>();
+        dependencies.forEach((module, upstream) -> upstream.forEach(u -> dependents.computeIfAbsent(u, k -> new ArrayList<>()).add(module)));
+        final Set<String> impacted = new LinkedHashSet<>(changed);
+        final Deque<String> queue = new ArrayDeque<>(changed);
+        while (! queue.isEmpty()) {
+            for (String dependent: dependents.getOrDefault(queue.poll(), new ArrayList<>())) {
+                if (impacted.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return impacted;
+    }
+
+    public Path getBaseFolder() {
+        return baseFolder;
+    }
+
+    private void move(Path source, Path target) throws IOException, GitAPIException {
+        write(target, new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+        git.rm().addFilepattern(relative(source)).call();
+    }
+
+    private void commit(String message) throws GitAPIException {
+        final PersonIdent ident = new PersonIdent("Synthetic", "synthetic@example.com", new Date(EPOCH + commits++ * 60_000L), TimeZone.getTimeZone("UTC"));
+        git.add().addFilepattern(".").call();
+        git.commit().setAuthor(ident).setCommitter(ident).setMessage(message).call();
+    }
+
+    private String relative(Path path) {
+        return baseFolder.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private Path moduleDir(int module) {
+        return baseFolder.resolve("modules").resolve(module(module));
+    }
+
+    private Path source(int module, int file) {
+        return moduleDir(module).resolve("src/main/java/F" + file + ".java");
+    }
+
+    private static String module(int module) {
+        return String.format("m%04d", module);
+    }
+
+    private static String content(int module, int file, int revision) {
+        return "class F" + file + " {\n    // " + module(module) + " revision " + revision + "\n}\n";
+    }
+
+    private static String pom(String artifactId, List<String> upstream) {
+        final StringBuilder pom = new StringBuilder("<project>\n    <artifactId>").append(artifactId).append("</artifactId>\n    <dependencies>\n");
+        upstream.forEach(u -> pom.append("        <dependency><artifactId>").append(u).append("</artifactId></dependency>\n"));
+        return pom.append("    </dependencies>\n</project>\n").toString();
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        git.getRepository().close();
+        git.close();
+    }
+}